@@ -1,5 +1,6 @@
 package eu.deltasw.auth_service;
 
+import eu.deltasw.common.concurrent.autoconfigure.VirtualThreadsAutoConfiguration;
 import eu.deltasw.common.exception.autoconfigure.ExceptionHandlerAutoConfiguration;
 import eu.deltasw.common.security.autoconfigure.JwtAutoConfiguration;
 import org.springframework.boot.SpringApplication;
@@ -7,7 +8,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
-@Import({JwtAutoConfiguration.class, ExceptionHandlerAutoConfiguration.class})
+@Import({JwtAutoConfiguration.class, ExceptionHandlerAutoConfiguration.class, VirtualThreadsAutoConfiguration.class})
 public class AuthServiceApplication {
 
     public static void main(String[] args) {
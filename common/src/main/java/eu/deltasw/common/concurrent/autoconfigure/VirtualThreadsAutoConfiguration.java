@@ -0,0 +1,35 @@
+package eu.deltasw.common.concurrent.autoconfigure;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+
+import eu.deltasw.common.util.RequestContext;
+import lombok.extern.slf4j.Slf4j;
+
+// Virtual threads are enabled with spring.threads.virtual.enabled=true. Spring Boot then
+// runs Tomcat, the @Async and @Scheduled executors and the Kafka listener containers on
+// virtual threads, otherwise on its platform thread pools. Both executors apply the
+// TaskDecorator bean, so the request context reaches @Async tasks either way.
+@Configuration
+@Slf4j
+public class VirtualThreadsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public TaskDecorator requestContextTaskDecorator() {
+        return RequestContext::wrap;
+    }
+
+    @Configuration
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    static class VirtualThreadsEnabled {
+
+        VirtualThreadsEnabled() {
+            log.info("Virtual threads enabled for request handling, async tasks and listeners");
+        }
+    }
+}
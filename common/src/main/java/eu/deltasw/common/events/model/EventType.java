@@ -5,8 +5,11 @@ import com.fasterxml.jackson.annotation.JsonValue;
 public enum EventType {
     ADD,
     RATE,
+    WATCHED,
     WATCH_INFO_UPDATED,
-    DELETE;
+    DELETE,
+    // Sent by movie-service once the library versions of a watch info change are committed
+    LIBRARY_VERSIONS_UPDATED;
 
     @JsonValue
     public String toValue() {
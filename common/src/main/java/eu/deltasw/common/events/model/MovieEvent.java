@@ -12,4 +12,10 @@ public class MovieEvent {
     private String userId;
     private Integer movieId;
     private Integer rating;
+    // Set on WATCH_INFO_UPDATED, the region whose watch providers changed
+    private String region;
+
+    public MovieEvent(EventType eventType, String userId, Integer movieId, Integer rating) {
+        this(eventType, userId, movieId, rating, null);
+    }
 }
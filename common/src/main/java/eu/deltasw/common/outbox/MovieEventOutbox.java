@@ -0,0 +1,43 @@
+package eu.deltasw.common.outbox;
+
+import java.sql.Types;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import eu.deltasw.common.events.model.MovieEvent;
+
+// Writes movie events to the outbox table of the service, OutboxRelay sends them to Kafka.
+// The id of a row is drawn from the table's sequence when it is inserted, see OutboxRelay.
+public class MovieEventOutbox {
+    private final JdbcTemplate jdbcTemplate;
+    private final String insert;
+
+    public MovieEventOutbox(JdbcTemplate jdbcTemplate, String table) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.insert = "INSERT INTO " + table + " (event_type, user_id, movie_id, rating, region) VALUES (?, ?, ?, ?, ?)";
+    }
+
+    public void enqueue(MovieEvent event) {
+        enqueueAll(List.of(event));
+    }
+
+    // Events must be written in the same transaction as the change they describe
+    public void enqueueAll(List<MovieEvent> events) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalTransactionStateException("Movie events must be written in the transaction of their change");
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(insert, events, events.size(), (statement, event) -> {
+            statement.setString(1, event.getEventType().name());
+            statement.setString(2, event.getUserId());
+            statement.setObject(3, event.getMovieId(), Types.INTEGER);
+            statement.setObject(4, event.getRating(), Types.INTEGER);
+            statement.setString(5, event.getRegion());
+        });
+    }
+}
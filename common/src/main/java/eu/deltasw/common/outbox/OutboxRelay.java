@@ -0,0 +1,121 @@
+package eu.deltasw.common.outbox;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.deltasw.common.events.model.EventType;
+import eu.deltasw.common.events.model.MovieEvent;
+import eu.deltasw.common.service.MovieEventProducer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+// Events leave in id order and only the replica holding the advisory lock relays. The outbox
+// sequence is not pooled and ids are drawn on insert, so a change that waits for a row lock or
+// for its row to exist gets a higher id than the change it waited on, and the events of one
+// movie row keep their commit order. Events of concurrent changes to different rows may leave
+// in any order.
+@Slf4j
+public class OutboxRelay {
+    private static final RowMapper<Entry> ENTRY = (rs, rowNum) -> new Entry(rs.getLong("id"),
+            new MovieEvent(EventType.valueOf(rs.getString("event_type")), rs.getString("user_id"),
+                    rs.getObject("movie_id", Integer.class), rs.getObject("rating", Integer.class),
+                    rs.getString("region")));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MovieEventProducer movieEventProducer;
+    private final String table;
+    private final long lockKey;
+    private final String eventIdPrefix;
+    private final int maxBatchSize;
+    private final Duration sendTimeout;
+    private final Counter relayedEvents;
+    private final DistributionSummary batchSize;
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    private record Entry(long id, MovieEvent event) {
+    }
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+            MovieEventProducer movieEventProducer, String table, long lockKey, String eventIdPrefix,
+            int maxBatchSize, Duration sendTimeout, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.movieEventProducer = movieEventProducer;
+        this.table = table;
+        this.lockKey = lockKey;
+        this.eventIdPrefix = eventIdPrefix;
+        this.maxBatchSize = maxBatchSize;
+        this.sendTimeout = sendTimeout;
+        this.relayedEvents = Counter.builder("movie.outbox.relayed")
+                .description("Movie events relayed from the outbox to Kafka")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("movie.outbox.batch.size")
+                .description("Number of movie events per relayed batch")
+                .register(meterRegistry);
+        Gauge.builder("movie.outbox.lag", lagMillis, AtomicLong::get)
+                .description("Age of the oldest movie event waiting in the outbox")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${movie.outbox.relay.interval}")
+    public void relay() {
+        try {
+            Integer relayed;
+            do {
+                relayed = transactionTemplate.execute(status -> relayBatch());
+            } while (relayed != null && relayed == maxBatchSize);
+        } catch (Exception e) {
+            log.error("Failed to relay movie events, will retry", e);
+        }
+    }
+
+    private int relayBatch() {
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class,
+                lockKey))) {
+            return 0;
+        }
+
+        Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(created_at) FROM " + table, Timestamp.class);
+        lagMillis.set(oldest == null ? 0 : System.currentTimeMillis() - oldest.getTime());
+
+        List<Entry> batch = jdbcTemplate.query("SELECT id, event_type, user_id, movie_id, rating, region FROM " + table
+                + " ORDER BY id LIMIT ?", ENTRY, maxBatchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Rows are only deleted once the broker acknowledged every event, a crash in
+        // between re-sends the batch and consumers dedupe on the event id header
+        List<CompletableFuture<?>> results = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            results.add(movieEventProducer.sendMovieEvent(entry.event(), eventIdPrefix + entry.id()));
+        }
+        movieEventProducer.flush();
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .orTimeout(sendTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .join();
+
+        // Exactly the relayed ids, a lower id committed meanwhile is kept for the next batch
+        jdbcTemplate.update("DELETE FROM " + table + " WHERE id = ANY (?)",
+                (Object) batch.stream().map(Entry::id).toArray(Long[]::new));
+        relayedEvents.increment(batch.size());
+        batchSize.record(batch.size());
+        log.debug("Relayed {} movie events", batch.size());
+        return batch.size();
+    }
+}
@@ -0,0 +1,42 @@
+package eu.deltasw.common.outbox.autoconfigure;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.deltasw.common.outbox.MovieEventOutbox;
+import eu.deltasw.common.outbox.OutboxRelay;
+import eu.deltasw.common.service.MovieEventProducer;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Each service keeps its own outbox table and relays it under its own advisory lock
+@Configuration
+@ConditionalOnClass({ JdbcTemplate.class, MeterRegistry.class })
+public class MovieEventOutboxAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public MovieEventOutbox movieEventOutbox(JdbcTemplate jdbcTemplate,
+            @Value("${movie.outbox.table:movie_event_outbox}") String table) {
+        return new MovieEventOutbox(jdbcTemplate, table);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public OutboxRelay outboxRelay(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+            MovieEventProducer movieEventProducer, MeterRegistry meterRegistry,
+            @Value("${movie.outbox.table:movie_event_outbox}") String table,
+            @Value("${movie.outbox.lock-key}") long lockKey,
+            @Value("${movie.outbox.event-id-prefix:}") String eventIdPrefix,
+            @Value("${movie.outbox.relay.batch-size}") int batchSize,
+            @Value("${movie.outbox.relay.send-timeout}") Duration sendTimeout) {
+        return new OutboxRelay(jdbcTemplate, transactionTemplate, movieEventProducer, table, lockKey, eventIdPrefix,
+                batchSize, sendTimeout, meterRegistry);
+    }
+}
@@ -1,11 +1,13 @@
 package eu.deltasw.common.security.autoconfigure;
 
+import org.apache.kafka.clients.admin.NewTopic;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.KafkaTemplate;
 
 import eu.deltasw.common.events.model.MovieEvent;
@@ -20,4 +22,12 @@ public class MovieEventProducerAutoConfiguration {
             @Value("${movie.events.topic}") String topic) {
         return new MovieEventProducer(kafkaTemplate, topic);
     }
+
+    // Created on startup, or grown when it has fewer partitions than configured
+    @Bean
+    @ConditionalOnMissingBean(name = "movieEventsTopic")
+    public NewTopic movieEventsTopic(@Value("${movie.events.topic}") String topic,
+            @Value("${movie.events.partitions:12}") int partitions) {
+        return TopicBuilder.name(topic).partitions(partitions).build();
+    }
 }
@@ -8,8 +8,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import eu.deltasw.common.security.JwtUtil;
@@ -36,9 +34,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             @NonNull FilterChain filterChain) throws ServletException, IOException {
         log.debug("Processing request: {} {}", request.getMethod(), request.getRequestURI());
 
-        // Ensure RequestContextHolder has the current request
-        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
-
         String authHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
 
         log.debug("Authorization header: {}", authHeader);
@@ -62,10 +57,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 return;
             }
 
-            // Add user information to request attributes
+            // Bind the user for the rest of the chain
             String userId = jwtUtil.extractUserId(token);
             log.debug("Extracted user ID: {}", userId);
-            RequestContext.setCurrentUserId(userId);
 
             // Set up Spring Security authentication
             UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
@@ -74,7 +68,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             SecurityContextHolder.getContext().setAuthentication(authentication);
 
             log.debug("JWT validation successful, proceeding with request");
-            filterChain.doFilter(request, response);
+            RequestContext.runWithUserId(userId, () -> filterChain.doFilter(request, response));
         } catch (Exception e) {
             log.error("Error validating JWT token", e);
             response.setStatus(HttpStatus.UNAUTHORIZED.value());
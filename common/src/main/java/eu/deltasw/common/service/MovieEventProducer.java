@@ -1,11 +1,19 @@
 package eu.deltasw.common.service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 
 import eu.deltasw.common.events.model.MovieEvent;
 
 public class MovieEventProducer {
+    public static final String EVENT_ID_HEADER = "movie-event-id";
+
     private final KafkaTemplate<String, MovieEvent> kafkaTemplate;
     private final String topic;
 
@@ -15,7 +23,31 @@ public class MovieEventProducer {
         this.topic = topic;
     }
 
-    public void sendMovieEvent(MovieEvent event) {
-        kafkaTemplate.send(topic, event);
+    public CompletableFuture<SendResult<String, MovieEvent>> sendMovieEvent(MovieEvent event) {
+        return kafkaTemplate.send(topic, key(event), event);
+    }
+
+    // The id lets consumers drop events that are delivered more than once
+    public CompletableFuture<SendResult<String, MovieEvent>> sendMovieEvent(MovieEvent event, String eventId) {
+        ProducerRecord<String, MovieEvent> record = new ProducerRecord<>(topic, key(event), event);
+        record.headers().add(EVENT_ID_HEADER, eventId.getBytes(StandardCharsets.UTF_8));
+        return kafkaTemplate.send(record);
+    }
+
+    public CompletableFuture<Void> sendMovieEvents(List<MovieEvent> events) {
+        CompletableFuture<?>[] results = events.stream()
+                .map(event -> kafkaTemplate.send(topic, key(event), event))
+                .toArray(CompletableFuture[]::new);
+        kafkaTemplate.flush();
+        return CompletableFuture.allOf(results);
+    }
+
+    public void flush() {
+        kafkaTemplate.flush();
+    }
+
+    // Events of the same movie land on the same partition and keep their order
+    private static String key(MovieEvent event) {
+        return event.getMovieId() != null ? event.getMovieId().toString() : null;
     }
 }
@@ -1,23 +1,64 @@
 package eu.deltasw.common.util;
 
-import org.springframework.web.context.request.RequestAttributes;
-import org.springframework.web.context.request.RequestContextHolder;
+import java.util.concurrent.Callable;
 
+// Holds the authenticated user for the duration of a scope, in the style of
+// ScopedValue (still a preview in Java 21). Values are bound and restored by
+// runWithUserId and handed to child tasks explicitly with wrap, so they work
+// the same on platform and virtual threads.
 public class RequestContext {
-    private static final String USER_ID_ATTRIBUTE = "userId";
+    private static final ThreadLocal<String> USER_ID = new ThreadLocal<>();
+
+    @FunctionalInterface
+    public interface ScopedRunnable<E extends Exception> {
+        void run() throws E;
+    }
 
     public static String getCurrentUserId() {
-        if (RequestContextHolder.getRequestAttributes() == null) {
-            return null;
+        return USER_ID.get();
+    }
+
+    public static <E extends Exception> void runWithUserId(String userId, ScopedRunnable<E> action) throws E {
+        String previous = USER_ID.get();
+        USER_ID.set(userId);
+        try {
+            action.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static <T> T callWithUserId(String userId, Callable<T> action) throws Exception {
+        String previous = USER_ID.get();
+        USER_ID.set(userId);
+        try {
+            return action.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static Runnable wrap(Runnable task) {
+        String userId = USER_ID.get();
+        if (userId == null) {
+            return task;
+        }
+        return () -> runWithUserId(userId, task::run);
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        String userId = USER_ID.get();
+        if (userId == null) {
+            return task;
         }
-        return (String) RequestContextHolder.currentRequestAttributes()
-                .getAttribute(USER_ID_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        return () -> callWithUserId(userId, task);
     }
 
-    public static void setCurrentUserId(String userId) {
-        if (RequestContextHolder.getRequestAttributes() != null) {
-            RequestContextHolder.currentRequestAttributes()
-                    .setAttribute(USER_ID_ATTRIBUTE, userId, RequestAttributes.SCOPE_REQUEST);
+    private static void restore(String previous) {
+        if (previous == null) {
+            USER_ID.remove();
+        } else {
+            USER_ID.set(previous);
         }
     }
-}
\ No newline at end of file
+}
@@ -2,18 +2,23 @@ package eu.deltasw.movie_service;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.Import;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import eu.deltasw.common.concurrent.autoconfigure.VirtualThreadsAutoConfiguration;
 import eu.deltasw.common.exception.autoconfigure.ExceptionHandlerAutoConfiguration;
+import eu.deltasw.common.outbox.autoconfigure.MovieEventOutboxAutoConfiguration;
 import eu.deltasw.common.security.autoconfigure.JwtFilterAutoConfiguration;
 import eu.deltasw.common.security.autoconfigure.MovieEventProducerAutoConfiguration;
 
 @EnableScheduling
+@EnableCaching
 @SpringBootApplication
 @Import({ ExceptionHandlerAutoConfiguration.class, JwtFilterAutoConfiguration.class,
-        MovieEventProducerAutoConfiguration.class })
+        MovieEventProducerAutoConfiguration.class, VirtualThreadsAutoConfiguration.class,
+        MovieEventOutboxAutoConfiguration.class })
 @EnableFeignClients
 public class MovieServiceApplication {
 
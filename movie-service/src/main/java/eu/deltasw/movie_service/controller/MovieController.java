@@ -1,31 +1,37 @@
 package eu.deltasw.movie_service.controller;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import eu.deltasw.common.events.model.EventType;
 import eu.deltasw.common.events.model.MovieEvent;
-import eu.deltasw.common.model.dto.WatchInfoRequest;
-import eu.deltasw.common.model.dto.WatchInfoResponse;
-import eu.deltasw.common.service.MovieEventProducer;
+import eu.deltasw.common.outbox.MovieEventOutbox;
 import eu.deltasw.common.util.RequestContext;
-import eu.deltasw.movie_service.data.WatchInfoClient;
 import eu.deltasw.movie_service.model.Movie;
 import eu.deltasw.movie_service.model.dto.AddMovieRequest;
+import eu.deltasw.movie_service.model.dto.BatchMutationRequest;
+import eu.deltasw.movie_service.model.dto.BatchMutationResponse;
+import eu.deltasw.movie_service.model.dto.BulkAddMovieRequest;
 import eu.deltasw.movie_service.model.dto.ErrorResponse;
 import eu.deltasw.movie_service.model.dto.RateRequest;
-import eu.deltasw.movie_service.model.dto.WatchlistResponse;
 import eu.deltasw.movie_service.repository.MovieRepository;
-import feign.FeignException;
+import eu.deltasw.movie_service.service.LibraryStatsService;
+import eu.deltasw.movie_service.service.LibraryStatsService.Delta;
+import eu.deltasw.movie_service.service.LibraryStatsService.MovieState;
+import eu.deltasw.movie_service.service.MovieLibraryService;
+import eu.deltasw.movie_service.service.WatchlistAssembler;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 
@@ -33,20 +39,27 @@ import lombok.extern.slf4j.Slf4j;
 @RequestMapping("/movies")
 @Slf4j
 public class MovieController {
+    private static final String PARTIAL_HEADER = "X-Watch-Info-Partial";
 
     private final MovieRepository repository;
-    private final MovieEventProducer movieEventProducer;
-    private final WatchInfoClient watchInfoClient;
-
-    public MovieController(MovieRepository repository, MovieEventProducer movieEventProducer,
-            WatchInfoClient watchInfoClient) {
+    private final MovieEventOutbox outbox;
+    private final MovieLibraryService libraryService;
+    private final WatchlistAssembler watchlistAssembler;
+    private final LibraryStatsService statsService;
+
+    public MovieController(MovieRepository repository, MovieEventOutbox outbox,
+            MovieLibraryService libraryService, WatchlistAssembler watchlistAssembler,
+            LibraryStatsService statsService) {
         this.repository = repository;
-        this.movieEventProducer = movieEventProducer;
-        this.watchInfoClient = watchInfoClient;
+        this.outbox = outbox;
+        this.libraryService = libraryService;
+        this.watchlistAssembler = watchlistAssembler;
+        this.statsService = statsService;
     }
 
     @GetMapping("/watched")
-    public ResponseEntity<?> getWatchedMovies() {
+    public ResponseEntity<?> getWatchedMovies(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String userId = RequestContext.getCurrentUserId();
 
         // Validation
@@ -54,11 +67,54 @@ public class MovieController {
             return ResponseEntity.badRequest().body(new ErrorResponse("Cannot extract email from JWT"));
         }
 
-        return ResponseEntity.ok(repository.findByUserIdAndWatchedIsTrue(userId));
+        // The version is read before the list, so a concurrent change can only make it older than the body
+        String etag = etag(libraryService.getLibraryVersion(userId));
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        return ResponseEntity.ok().eTag(etag).body(libraryService.getWatched(userId));
     }
 
     @GetMapping("/watchlist")
-    public ResponseEntity<?> getWatchlist() {
+    public ResponseEntity<?> getWatchlist(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String userId = RequestContext.getCurrentUserId();
+
+        // Validation
+        if (userId == null) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Cannot extract email from JWT"));
+        }
+
+        String etag = etag(libraryService.getLibraryVersion(userId));
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        var movies = libraryService.getWatchlist(userId);
+
+        log.debug("Fetching watch info for {} movies", movies.size());
+        if (movies.isEmpty()) {
+            return ResponseEntity.ok().eTag(etag).body(movies); // Return an empty response
+        }
+
+        // Fetch watch info for the movies within the latency budget, cached per user
+        var watchInfo = libraryService.getWatchInfo(userId, movies);
+
+        log.debug("Received watch info for {} of {} movies", watchInfo.watchInfo().size(), movies.size());
+
+        // Partial responses get no ETag, so the client does not keep them as current
+        var response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(PARTIAL_HEADER, String.valueOf(watchInfo.partial()));
+        if (!watchInfo.partial()) {
+            response.eTag(etag);
+        }
+        return response.body(watchlistAssembler.stream(movies, watchInfo.watchInfo()));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats() {
         String userId = RequestContext.getCurrentUserId();
 
         // Validation
@@ -66,81 +122,10 @@ public class MovieController {
             return ResponseEntity.badRequest().body(new ErrorResponse("Cannot extract email from JWT"));
         }
 
-        var movies = repository.findByUserIdAndWatchedIsFalseOrWatchedIsNull(userId);
-
-        // Fetch watch info for the movies
-        var movieIds = new ArrayList<>(
-                movies.stream()
-                        .map(Movie::getMovieId)
-                        .toList());
-
-        log.info("Fetching watch info for movies: {}", movieIds);
-        if (movieIds.isEmpty()) {
-            return ResponseEntity.ok(movies); // Return an empty response
-        }
-
-        List<WatchInfoResponse> watchInfoResponse;
-        try {
-            // Fetch watch info from the watch info client
-            watchInfoResponse = watchInfoClient.getWatchInfo(new WatchInfoRequest(movieIds));
-        } catch (FeignException e) {
-            log.error("Error fetching watch info", e);
-            var response = movies.stream()
-                    .map(movie -> new WatchlistResponse(
-                            movie.getId(),
-                            movie.getMovieId(),
-                            movie.getTitle(),
-                            movie.getPoster(),
-                            null,
-                            null)) // No watch info available
-                    .toList();
-            return ResponseEntity.ok(response); // Return movies without watch info data
-        }
-
-        List<WatchlistResponse> watchlistResponse = new ArrayList<>();
-        log.info("Watch info response: {}", watchInfoResponse);
-
-        if (watchInfoResponse.isEmpty()) {
-            // If we got an empty watch info response, return all movies with null watch
-            // info
-            return ResponseEntity.ok(movies.stream()
-                    .map(movie -> new WatchlistResponse(
-                            movie.getId(),
-                            movie.getMovieId(),
-                            movie.getTitle(),
-                            movie.getPoster(),
-                            null,
-                            null)) // No watch info available
-                    .toList());
-        }
-
-        // Combine the watch info and movies to MovieResponse
-        watchInfoResponse.forEach(info -> movies.stream()
-                .filter(movie -> movie.getMovieId().equals(info.getMovieId()))
-                .findFirst()
-                .ifPresent(movie -> watchlistResponse.add(new WatchlistResponse(
-                        movie.getId(),
-                        movie.getMovieId(),
-                        movie.getTitle(),
-                        movie.getPoster(),
-                        info.getUserScore(),
-                        info.getWatchProviders()))));
-
-        // Add remaining movies without watch info
-        movies.stream()
-                .filter(movie -> watchlistResponse.stream()
-                        .noneMatch(response -> response.getMovieId().equals(movie.getMovieId())))
-                .forEach(movie -> watchlistResponse.add(new WatchlistResponse(
-                        movie.getId(),
-                        movie.getMovieId(),
-                        movie.getTitle(),
-                        movie.getPoster(),
-                        null,
-                        null)));
-
-        return ResponseEntity.ok(watchlistResponse);
+        return ResponseEntity.ok(statsService.getStats(userId));
     }
 
+    @Transactional
     @PostMapping
     public ResponseEntity<?> addMovie(@Valid @RequestBody AddMovieRequest addMovie) {
         String userId = RequestContext.getCurrentUserId();
@@ -158,11 +143,56 @@ public class MovieController {
                 .build();
 
         Movie savedMovie = repository.save(movie);
+        statsService.apply(userId, new Delta().add(MovieState.of(savedMovie), 1));
+        libraryService.evictUser(userId);
         MovieEvent event = new MovieEvent(EventType.ADD, movie.getUserId(), movie.getMovieId(), movie.getRating());
-        movieEventProducer.sendMovieEvent(event);
+        outbox.enqueue(event);
         return ResponseEntity.ok(savedMovie);
     }
 
+    @Transactional
+    @PostMapping("/bulk")
+    public ResponseEntity<?> addMovies(@Valid @RequestBody BulkAddMovieRequest bulkRequest) {
+        String userId = RequestContext.getCurrentUserId();
+
+        // Validation
+        if (userId == null) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Cannot extract email from JWT"));
+        }
+
+        var savedMovies = libraryService.addMovies(userId, bulkRequest.getMovies());
+        outbox.enqueueAll(savedMovies.stream()
+                .map(movie -> new MovieEvent(EventType.ADD, movie.getUserId(), movie.getMovieId(), movie.getRating()))
+                .toList());
+        return ResponseEntity.ok(savedMovies);
+    }
+
+    @Transactional
+    @PatchMapping("/batch")
+    public ResponseEntity<?> applyBatch(@Valid @RequestBody BatchMutationRequest batchRequest) {
+        String userId = RequestContext.getCurrentUserId();
+
+        // Validation
+        if (userId == null) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Cannot extract email from JWT"));
+        }
+        if (batchRequest.getAction() == BatchMutationRequest.Action.RATE && batchRequest.getRating() == null) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Rating is required"));
+        }
+
+        var movies = libraryService.applyBatch(userId, batchRequest);
+        EventType eventType = switch (batchRequest.getAction()) {
+            case WATCHED -> EventType.WATCHED;
+            case RATE -> EventType.RATE;
+            case DELETE -> EventType.DELETE;
+        };
+        outbox.enqueueAll(movies.stream()
+                .map(movie -> new MovieEvent(eventType, movie.getUserId(), movie.getMovieId(), movie.getRating()))
+                .toList());
+        return ResponseEntity.ok(new BatchMutationResponse(movies.size()));
+    }
+
+    @Transactional
     @PostMapping("/watched/{id}")
     public ResponseEntity<?> setWatched(@PathVariable("id") Long id) {
         String userId = RequestContext.getCurrentUserId();
@@ -172,15 +202,19 @@ public class MovieController {
             return ResponseEntity.badRequest().body(new ErrorResponse("Cannot extract email from JWT"));
         }
 
-        return repository.findById(id)
-                .filter(m -> m.getUserId().equals(userId))
+        return repository.markWatched(id, userId)
                 .map(movie -> {
-                    movie.setWatched(true);
-                    return ResponseEntity.ok(repository.save(movie));
+                    statsService.apply(userId, new Delta().change(MovieState.previous(movie), MovieState.of(movie)));
+                    libraryService.evictUser(userId);
+                    MovieEvent event = new MovieEvent(EventType.WATCHED, movie.getUserId(), movie.getMovieId(),
+                            movie.getRating());
+                    outbox.enqueue(event);
+                    return ResponseEntity.ok(movie.toView());
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @Transactional
     @PostMapping("/rate/{id}")
     public ResponseEntity<?> setRating(@PathVariable("id") Long id, @Valid @RequestBody RateRequest rateRequest) {
         String userId = RequestContext.getCurrentUserId();
@@ -190,18 +224,19 @@ public class MovieController {
             return ResponseEntity.badRequest().body(new ErrorResponse("Cannot extract email from JWT"));
         }
 
-        return repository.findById(id)
-                .filter(m -> m.getUserId().equals(userId))
+        return repository.rate(id, userId, rateRequest.getRating())
                 .map(movie -> {
-                    movie.setRating(rateRequest.getRating());
+                    statsService.apply(userId, new Delta().change(MovieState.previous(movie), MovieState.of(movie)));
+                    libraryService.evictUser(userId);
                     MovieEvent event = new MovieEvent(EventType.RATE, movie.getUserId(), movie.getMovieId(),
                             movie.getRating());
-                    movieEventProducer.sendMovieEvent(event);
-                    return ResponseEntity.ok(repository.save(movie));
+                    outbox.enqueue(event);
+                    return ResponseEntity.ok(movie.toView());
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @Transactional
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteMovie(@PathVariable("id") Long id) {
         String userId = RequestContext.getCurrentUserId();
@@ -211,15 +246,35 @@ public class MovieController {
             return ResponseEntity.badRequest().body(new ErrorResponse("Cannot extract email from JWT"));
         }
 
-        return repository.findById(id)
-                .filter(m -> m.getUserId().equals(userId))
+        return repository.deleteOwned(id, userId)
                 .map(movie -> {
-                    repository.delete(movie);
+                    statsService.apply(userId, new Delta().add(MovieState.of(movie), -1));
+                    libraryService.evictUser(userId);
                     MovieEvent event = new MovieEvent(EventType.DELETE, movie.getUserId(), movie.getMovieId(),
                             movie.getRating());
-                    movieEventProducer.sendMovieEvent(event);
+                    outbox.enqueue(event);
                     return ResponseEntity.noContent().<Void>build();
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
+
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -1,5 +1,7 @@
 package eu.deltasw.movie_service.data;
 
+import java.util.List;
+
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -10,4 +12,7 @@ import eu.deltasw.common.model.dto.MovieNotifyRequest;
 public interface NotificationClient {
     @PostMapping("/notify")
     public Void notify(@RequestBody MovieNotifyRequest notifyRequest);
+
+    @PostMapping("/notify/bulk")
+    public Void notifyAll(@RequestBody List<MovieNotifyRequest> notifyRequests);
 }
@@ -5,6 +5,7 @@ import java.util.List;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import eu.deltasw.common.model.dto.WatchInfoRequest;
 import eu.deltasw.common.model.dto.WatchInfoResponse;
@@ -12,5 +13,6 @@ import eu.deltasw.common.model.dto.WatchInfoResponse;
 @FeignClient(name = "tmdb-service")
 public interface WatchInfoClient {
     @PostMapping("/watch-info")
-    public List<WatchInfoResponse> getWatchInfo(@RequestBody WatchInfoRequest movies);
+    public List<WatchInfoResponse> getWatchInfo(@RequestParam("region") String region,
+            @RequestBody WatchInfoRequest movies);
 }
\ No newline at end of file
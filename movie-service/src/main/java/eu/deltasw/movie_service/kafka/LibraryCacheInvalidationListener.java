@@ -0,0 +1,65 @@
+package eu.deltasw.movie_service.kafka;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import eu.deltasw.common.events.model.MovieEvent;
+import eu.deltasw.movie_service.service.MovieLibraryService;
+import lombok.extern.slf4j.Slf4j;
+
+// Only evicts the local caches, database changes are made by the shared consumer group
+@Component
+@Slf4j
+public class LibraryCacheInvalidationListener {
+    private final MovieLibraryService libraryService;
+
+    @Value("${movie.watchlist.region}")
+    private String region;
+
+    public LibraryCacheInvalidationListener(MovieLibraryService libraryService) {
+        this.libraryService = libraryService;
+    }
+
+    @KafkaListener(topics = "${movie.events.topic}", groupId = "${movie.cache.invalidation.group-id}", containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleMovieEvents(List<MovieEvent> events) {
+        Set<Integer> updatedMovieIds = new HashSet<>();
+        boolean versionsUpdated = false;
+        for (MovieEvent event : events) {
+            if (event.getEventType() == null) {
+                continue;
+            }
+
+            switch (event.getEventType()) {
+                case ADD, RATE, WATCHED, DELETE:
+                    if (event.getUserId() != null) {
+                        libraryService.evictUser(event.getUserId());
+                    }
+                    break;
+                case WATCH_INFO_UPDATED:
+                    // Changes in other regions do not affect the served watch info
+                    if (event.getMovieId() != null
+                            && (event.getRegion() == null || event.getRegion().equalsIgnoreCase(region))) {
+                        updatedMovieIds.add(event.getMovieId());
+                    }
+                    break;
+                case LIBRARY_VERSIONS_UPDATED:
+                    versionsUpdated = true;
+                    break;
+                default:
+                    log.warn("Received unknown event type: {}", event.getEventType());
+            }
+        }
+
+        if (!updatedMovieIds.isEmpty()) {
+            libraryService.evictWatchInfo(updatedMovieIds);
+        }
+        if (versionsUpdated) {
+            libraryService.evictLibraryVersions();
+        }
+    }
+}
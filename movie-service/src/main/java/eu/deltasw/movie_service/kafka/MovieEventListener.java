@@ -1,65 +1,71 @@
 package eu.deltasw.movie_service.kafka;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
+import eu.deltasw.common.events.model.EventType;
 import eu.deltasw.common.events.model.MovieEvent;
-import eu.deltasw.common.model.dto.MovieNotifyRequest;
-import eu.deltasw.movie_service.data.NotificationClient;
-import eu.deltasw.movie_service.repository.MovieRepository;
-import feign.FeignException;
+import eu.deltasw.common.service.MovieEventProducer;
+import eu.deltasw.movie_service.service.MovieLibraryService;
+import eu.deltasw.movie_service.service.WatchlistNotifier;
 import lombok.extern.slf4j.Slf4j;
 
 @Component
 @Slf4j
 public class MovieEventListener {
-    private final MovieRepository repository;
-    private final NotificationClient notificationClient;
+    private final WatchlistNotifier watchlistNotifier;
+    private final MovieLibraryService libraryService;
+    private final MovieEventProducer movieEventProducer;
+
+    @Value("${movie.watchlist.region}")
+    private String region;
 
-    public MovieEventListener(MovieRepository repository, NotificationClient notificationClient) {
-        this.repository = repository;
-        this.notificationClient = notificationClient;
+    public MovieEventListener(WatchlistNotifier watchlistNotifier, MovieLibraryService libraryService,
+            MovieEventProducer movieEventProducer) {
+        this.watchlistNotifier = watchlistNotifier;
+        this.libraryService = libraryService;
+        this.movieEventProducer = movieEventProducer;
     }
 
-    @KafkaListener(topics = "${movie.events.topic}", groupId = "${spring.kafka.consumer.group-id}", containerFactory = "kafkaListenerContainerFactory")
-    public void handleMovieEvent(MovieEvent event) {
-        log.info("Received movie event: {}", event.toString());
+    @KafkaListener(topics = "${movie.events.topic}", groupId = "${spring.kafka.consumer.group-id}", containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleMovieEvents(List<ConsumerRecord<String, MovieEvent>> records) {
+        log.info("Received {} movie events", records.size());
 
-        if (event.getMovieId() == null)
+        // Collapse duplicate updates of the same movie within the poll, keeping their ids so the
+        // notifications of a redelivered event continue where they stopped
+        Map<Integer, List<String>> eventIds = new TreeMap<>();
+        for (ConsumerRecord<String, MovieEvent> record : records) {
+            MovieEvent event = record.value();
+            if (event == null || event.getEventType() != EventType.WATCH_INFO_UPDATED || event.getMovieId() == null
+                    || (event.getRegion() != null && !event.getRegion().equalsIgnoreCase(region))) {
+                continue;
+            }
+            List<String> ids = eventIds.computeIfAbsent(event.getMovieId(), movieId -> new ArrayList<>());
+            Header header = record.headers().lastHeader(MovieEventProducer.EVENT_ID_HEADER);
+            if (header != null) {
+                ids.add(new String(header.value(), StandardCharsets.UTF_8));
+            }
+        }
+        if (eventIds.isEmpty()) {
             return;
+        }
+        List<Integer> movieIds = List.copyOf(eventIds.keySet());
 
-        switch (event.getEventType()) {
-            case ADD, RATE, DELETE:
-                break;
-            case WATCH_INFO_UPDATED:
-                var usersWithMovieInWatchList = repository
-                        .findUnwatchedByMovieId(event.getMovieId());
-                log.info("Users with movie in watchlist: {}", usersWithMovieInWatchList);
-                if (!usersWithMovieInWatchList.isEmpty()) {
-                    var users = usersWithMovieInWatchList.stream()
-                            .map(movie -> movie.getUserId())
-                            .distinct()
-                            .toList();
-                    var movieTitle = usersWithMovieInWatchList.getFirst().getTitle();
-                    var moviePoster = usersWithMovieInWatchList.getFirst().getPoster();
-
-                    // Send notification
-                    var notifyRequest = new MovieNotifyRequest();
-                    notifyRequest.setUserIds(users);
-                    notifyRequest.setMovieTitle(movieTitle);
-                    notifyRequest.setMoviePoster(moviePoster);
-                    try {
-                        notificationClient.notify(notifyRequest);
-                    } catch (FeignException e) {
-                        log.error("Failed to send notification for movie: {}", event.getMovieId(), e);
-                    }
-                } else {
-                    log.warn("No users found with movie {} in watchlist", event.getMovieId());
-                }
+        // This group sees each event once, so the versions are bumped once for all replicas.
+        // The replicas drop their cached versions when the follow-up event arrives after the commit.
+        int bumped = libraryService.watchInfoChanged(movieIds);
+        log.debug("Bumped library version of {} users", bumped);
+        movieEventProducer.sendMovieEvent(new MovieEvent(EventType.LIBRARY_VERSIONS_UPDATED, null, null, null));
 
-                break;
-            default:
-                log.warn("Received unknown event type: {}", event.getEventType());
-        }
+        watchlistNotifier.notifyWatchers(eventIds);
     }
 }
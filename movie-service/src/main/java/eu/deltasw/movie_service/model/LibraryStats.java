@@ -0,0 +1,38 @@
+package eu.deltasw.movie_service.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "library_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LibraryStats {
+
+    @Id
+    private String userId;
+
+    private long watchedCount;
+    private long unwatchedCount;
+    private long ratingCount;
+    private long ratingSum;
+
+    @Column(name = "rating_1")
+    private long rating1;
+    @Column(name = "rating_2")
+    private long rating2;
+    @Column(name = "rating_3")
+    private long rating3;
+    @Column(name = "rating_4")
+    private long rating4;
+    @Column(name = "rating_5")
+    private long rating5;
+
+    private long version;
+}
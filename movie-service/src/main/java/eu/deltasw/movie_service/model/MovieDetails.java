@@ -0,0 +1,12 @@
+package eu.deltasw.movie_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@Value
+@AllArgsConstructor
+public class MovieDetails {
+    Integer movieId;
+    String title;
+    String poster;
+}
@@ -0,0 +1,25 @@
+package eu.deltasw.movie_service.model;
+
+public interface MovieMutation {
+    Long getId();
+
+    String getUserId();
+
+    Integer getMovieId();
+
+    String getTitle();
+
+    String getPoster();
+
+    Boolean getWatched();
+
+    Integer getRating();
+
+    Boolean getPreviousWatched();
+
+    Integer getPreviousRating();
+
+    default MovieView toView() {
+        return new MovieView(getId(), getUserId(), getMovieId(), getTitle(), getPoster(), getWatched(), getRating());
+    }
+}
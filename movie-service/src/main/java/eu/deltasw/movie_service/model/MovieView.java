@@ -0,0 +1,16 @@
+package eu.deltasw.movie_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@Value
+@AllArgsConstructor
+public class MovieView {
+    Long id;
+    String userId;
+    Integer movieId;
+    String title;
+    String poster;
+    Boolean watched;
+    Integer rating;
+}
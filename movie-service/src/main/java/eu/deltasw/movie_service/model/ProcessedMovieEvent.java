@@ -0,0 +1,26 @@
+package eu.deltasw.movie_service.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "processed_movie_event")
+@Data
+@NoArgsConstructor
+public class ProcessedMovieEvent {
+
+    // Value of the movie-event-id header set by the outbox relay
+    @Id
+    private String eventId;
+
+    private Integer movieId;
+    // Watchers are notified in user id order, the ones up to this id got their notification
+    private String notifiedUserId;
+    private Instant attemptedAt;
+    private Instant completedAt;
+}
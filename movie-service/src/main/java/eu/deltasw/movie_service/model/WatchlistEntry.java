@@ -0,0 +1,7 @@
+package eu.deltasw.movie_service.model;
+
+public interface WatchlistEntry {
+    Integer getMovieId();
+
+    String getUserId();
+}
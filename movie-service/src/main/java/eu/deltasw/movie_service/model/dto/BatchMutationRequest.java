@@ -0,0 +1,28 @@
+package eu.deltasw.movie_service.model.dto;
+
+import java.util.List;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+public class BatchMutationRequest {
+    public enum Action {
+        WATCHED,
+        RATE,
+        DELETE
+    }
+
+    @NotNull(message = "action is required")
+    private Action action;
+    @NotEmpty(message = "ids is required")
+    @Size(max = 10000, message = "ids must not contain more than 10000 entries")
+    private List<Long> ids;
+    @Min(value = 1, message = "Rating must be at least 1")
+    @Max(value = 5, message = "Rating must not exceed 5")
+    private Integer rating;
+}
@@ -0,0 +1,10 @@
+package eu.deltasw.movie_service.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BatchMutationResponse {
+    private int affected;
+}
@@ -0,0 +1,15 @@
+package eu.deltasw.movie_service.model.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+public class BulkAddMovieRequest {
+    @NotEmpty(message = "movies is required")
+    @Size(max = 10000, message = "movies must not contain more than 10000 entries")
+    private List<@Valid AddMovieRequest> movies;
+}
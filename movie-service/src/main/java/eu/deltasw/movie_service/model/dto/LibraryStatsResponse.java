@@ -0,0 +1,15 @@
+package eu.deltasw.movie_service.model.dto;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class LibraryStatsResponse {
+    private long watched;
+    private long unwatched;
+    private Double averageRating;
+    private Map<Integer, Long> ratings;
+}
@@ -0,0 +1,91 @@
+package eu.deltasw.movie_service.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import eu.deltasw.movie_service.model.LibraryStats;
+import eu.deltasw.movie_service.service.LibraryStatsService.Delta;
+
+public interface LibraryStatsRepository extends JpaRepository<LibraryStats, String> {
+    @Modifying
+    @Query(value = """
+            INSERT INTO library_stats AS s (user_id, watched_count, unwatched_count, rating_count, rating_sum,
+                    rating_1, rating_2, rating_3, rating_4, rating_5)
+                VALUES (:userId, :#{#delta.watched}, :#{#delta.unwatched}, :#{#delta.ratingCount},
+                    :#{#delta.ratingSum}, :#{#delta.ratings[0]}, :#{#delta.ratings[1]}, :#{#delta.ratings[2]},
+                    :#{#delta.ratings[3]}, :#{#delta.ratings[4]})
+                ON CONFLICT (user_id) DO UPDATE SET
+                    watched_count = s.watched_count + EXCLUDED.watched_count,
+                    unwatched_count = s.unwatched_count + EXCLUDED.unwatched_count,
+                    rating_count = s.rating_count + EXCLUDED.rating_count,
+                    rating_sum = s.rating_sum + EXCLUDED.rating_sum,
+                    rating_1 = s.rating_1 + EXCLUDED.rating_1,
+                    rating_2 = s.rating_2 + EXCLUDED.rating_2,
+                    rating_3 = s.rating_3 + EXCLUDED.rating_3,
+                    rating_4 = s.rating_4 + EXCLUDED.rating_4,
+                    rating_5 = s.rating_5 + EXCLUDED.rating_5,
+                    version = s.version + 1""", nativeQuery = true)
+    void applyDelta(@Param("userId") String userId, @Param("delta") Delta delta);
+
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:key)", nativeQuery = true)
+    boolean tryLock(@Param("key") long key);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO library_stats (user_id)
+                SELECT DISTINCT user_id FROM movie WHERE user_id IS NOT NULL
+                ON CONFLICT (user_id) DO NOTHING""", nativeQuery = true)
+    int insertMissing();
+
+    // Locks the rows like applyDelta does, so changes committed during a rebuild are not overwritten
+    @Query(value = """
+            SELECT user_id FROM library_stats WHERE user_id > :afterUserId
+            ORDER BY user_id LIMIT :limit FOR UPDATE""", nativeQuery = true)
+    List<String> lockUserIdsAfter(@Param("afterUserId") String afterUserId, @Param("limit") int limit);
+
+    // Counts are read after the lock is held, so they include every committed change
+    @Modifying
+    @Query(value = """
+            UPDATE library_stats s SET
+                    watched_count = c.watched_count,
+                    unwatched_count = c.unwatched_count,
+                    rating_count = c.rating_count,
+                    rating_sum = c.rating_sum,
+                    rating_1 = c.rating_1,
+                    rating_2 = c.rating_2,
+                    rating_3 = c.rating_3,
+                    rating_4 = c.rating_4,
+                    rating_5 = c.rating_5
+                FROM (SELECT l.user_id,
+                        COUNT(m.id) FILTER (WHERE m.watched IS TRUE) AS watched_count,
+                        COUNT(m.id) FILTER (WHERE m.watched IS NOT TRUE) AS unwatched_count,
+                        COUNT(m.id) FILTER (WHERE m.rating BETWEEN 1 AND 5) AS rating_count,
+                        COALESCE(SUM(m.rating) FILTER (WHERE m.rating BETWEEN 1 AND 5), 0) AS rating_sum,
+                        COUNT(m.id) FILTER (WHERE m.rating = 1) AS rating_1,
+                        COUNT(m.id) FILTER (WHERE m.rating = 2) AS rating_2,
+                        COUNT(m.id) FILTER (WHERE m.rating = 3) AS rating_3,
+                        COUNT(m.id) FILTER (WHERE m.rating = 4) AS rating_4,
+                        COUNT(m.id) FILTER (WHERE m.rating = 5) AS rating_5
+                    FROM library_stats l LEFT JOIN movie m ON m.user_id = l.user_id
+                    WHERE l.user_id IN (:userIds)
+                    GROUP BY l.user_id) c
+                WHERE s.user_id = c.user_id""", nativeQuery = true)
+    int rebuild(@Param("userIds") Collection<String> userIds);
+
+    @Query("SELECT s.version FROM LibraryStats s WHERE s.userId = :userId")
+    Optional<Long> findVersionByUserId(@Param("userId") String userId);
+
+    // Users with one of the movies still on their watchlist
+    @Modifying
+    @Query(value = """
+            UPDATE library_stats SET version = version + 1
+            WHERE user_id IN (SELECT user_id FROM movie WHERE movie_id IN (:movieIds) AND watched IS NOT TRUE)""",
+            nativeQuery = true)
+    int incrementVersionsOfWatchers(@Param("movieIds") Collection<Integer> movieIds);
+}
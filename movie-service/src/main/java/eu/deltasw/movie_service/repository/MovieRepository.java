@@ -1,20 +1,80 @@
 package eu.deltasw.movie_service.repository;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import eu.deltasw.movie_service.model.Movie;
+import eu.deltasw.movie_service.model.MovieDetails;
+import eu.deltasw.movie_service.model.MovieMutation;
+import eu.deltasw.movie_service.model.MovieView;
+import eu.deltasw.movie_service.model.WatchlistEntry;
+import jakarta.persistence.LockModeType;
 
 public interface MovieRepository extends JpaRepository<Movie, Long> {
-    @Query("SELECT m FROM Movie m WHERE m.userId = :userId AND (m.watched = false OR m.watched IS NULL)")
-    List<Movie> findByUserIdAndWatchedIsFalseOrWatchedIsNull(@Param("userId") String userId);
+    String VIEW = "new eu.deltasw.movie_service.model.MovieView(m.id, m.userId, m.movieId, m.title, m.poster, m.watched, m.rating)";
+    String MUTATION = " m.id AS \"id\", m.user_id AS \"userId\", m.movie_id AS \"movieId\", m.title AS \"title\","
+            + " m.poster AS \"poster\", m.watched AS \"watched\", m.rating AS \"rating\"";
 
-    @Query("SELECT m FROM Movie m WHERE m.movieId = :movieId AND (m.watched = false OR m.watched IS NULL)")
-    List<Movie> findUnwatchedByMovieId(@Param("movieId") Integer movieId);
+    @Query("SELECT " + VIEW + " FROM Movie m WHERE m.userId = :userId AND (m.watched = false OR m.watched IS NULL)")
+    List<MovieView> findByUserIdAndWatchedIsFalseOrWatchedIsNull(@Param("userId") String userId);
 
-    @Query("SELECT m FROM Movie m WHERE m.userId = :userId AND m.watched = true")
-    List<Movie> findByUserIdAndWatchedIsTrue(@Param("userId") String userId);
+    @Query(value = """
+            SELECT DISTINCT m.movie_id AS "movieId", m.user_id AS "userId" FROM movie m
+            WHERE m.movie_id IN (:movieIds) AND (m.watched = false OR m.watched IS NULL)
+                AND (m.movie_id, m.user_id) > (:afterMovieId, :afterUserId)
+            ORDER BY m.movie_id, m.user_id
+            LIMIT :limit""", nativeQuery = true)
+    List<WatchlistEntry> findWatchlistEntriesAfter(@Param("movieIds") List<Integer> movieIds,
+            @Param("afterMovieId") int afterMovieId, @Param("afterUserId") String afterUserId,
+            @Param("limit") int limit);
+
+    @Query("SELECT new eu.deltasw.movie_service.model.MovieDetails(m.movieId, MAX(m.title), MAX(m.poster)) FROM Movie m WHERE m.movieId IN :movieIds AND (m.watched = false OR m.watched IS NULL) GROUP BY m.movieId")
+    List<MovieDetails> findDetailsByMovieIdIn(@Param("movieIds") List<Integer> movieIds);
+
+    @Query("SELECT " + VIEW + " FROM Movie m WHERE m.userId = :userId AND m.watched = true")
+    List<MovieView> findByUserIdAndWatchedIsTrue(@Param("userId") String userId);
+
+    // Locked before the events are written, so their outbox ids follow the order of the changes
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Movie> findByUserIdAndIdIn(String userId, List<Long> ids);
+
+    // One DELETE with an IN list, deleteAllInBatch chains the ids with OR
+    @Modifying
+    @Query("DELETE FROM Movie m WHERE m.userId = :userId AND m.id IN :ids")
+    int deleteByUserIdAndIdIn(@Param("userId") String userId, @Param("ids") List<Long> ids);
+
+    // Ownership check and change in one statement, the row lock of the sub-select
+    // makes the previous values exact under concurrent changes
+    @Transactional
+    @Query(value = """
+            UPDATE movie m SET watched = TRUE
+            FROM (SELECT id, watched, rating FROM movie WHERE id = :id AND user_id = :userId FOR UPDATE) old
+            WHERE m.id = old.id
+            RETURNING""" + MUTATION + ", old.watched AS \"previousWatched\", old.rating AS \"previousRating\"",
+            nativeQuery = true)
+    Optional<MovieMutation> markWatched(@Param("id") Long id, @Param("userId") String userId);
+
+    @Transactional
+    @Query(value = """
+            UPDATE movie m SET rating = :rating
+            FROM (SELECT id, watched, rating FROM movie WHERE id = :id AND user_id = :userId FOR UPDATE) old
+            WHERE m.id = old.id
+            RETURNING""" + MUTATION + ", old.watched AS \"previousWatched\", old.rating AS \"previousRating\"",
+            nativeQuery = true)
+    Optional<MovieMutation> rate(@Param("id") Long id, @Param("userId") String userId,
+            @Param("rating") Integer rating);
+
+    @Transactional
+    @Query(value = """
+            DELETE FROM movie m WHERE m.id = :id AND m.user_id = :userId
+            RETURNING""" + MUTATION + ", m.watched AS \"previousWatched\", m.rating AS \"previousRating\"",
+            nativeQuery = true)
+    Optional<MovieMutation> deleteOwned(@Param("id") Long id, @Param("userId") String userId);
 }
@@ -0,0 +1,52 @@
+package eu.deltasw.movie_service.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.deltasw.movie_service.model.ProcessedMovieEvent;
+
+public interface ProcessedMovieEventRepository extends JpaRepository<ProcessedMovieEvent, String> {
+    // Event ids are prefixed outbox row ids, so joining them with commas is safe
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO processed_movie_event (event_id, movie_id, attempted_at)
+            SELECT e.event_id, e.movie_id::integer, :attemptedAt
+            FROM unnest(string_to_array(:eventIds, ','), string_to_array(:movieIds, ',')) AS e(event_id, movie_id)
+            ON CONFLICT (event_id) DO NOTHING""", nativeQuery = true)
+    int insertMissing(@Param("eventIds") String eventIds, @Param("movieIds") String movieIds,
+            @Param("attemptedAt") Instant attemptedAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessedMovieEvent e SET e.notifiedUserId = :userId WHERE e.eventId IN :eventIds")
+    int markNotifiedUntil(@Param("eventIds") Collection<String> eventIds, @Param("userId") String userId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessedMovieEvent e SET e.completedAt = :completedAt WHERE e.eventId IN :eventIds")
+    int markCompleted(@Param("eventIds") Collection<String> eventIds, @Param("completedAt") Instant completedAt);
+
+    @Query("SELECT e FROM ProcessedMovieEvent e WHERE e.completedAt IS NULL AND e.attemptedAt < :before ORDER BY e.attemptedAt")
+    List<ProcessedMovieEvent> findStalled(@Param("before") Instant before, Pageable pageable);
+
+    // Only one replica gets the rows, the others find them attempted again and leave them
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessedMovieEvent e SET e.attemptedAt = :now WHERE e.eventId IN :eventIds AND e.completedAt IS NULL AND e.attemptedAt < :before")
+    int claimStalled(@Param("eventIds") Collection<String> eventIds, @Param("before") Instant before,
+            @Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ProcessedMovieEvent e WHERE e.completedAt < :before")
+    int deleteCompletedBefore(@Param("before") Instant before);
+}
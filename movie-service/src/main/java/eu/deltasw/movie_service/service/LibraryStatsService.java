@@ -0,0 +1,153 @@
+package eu.deltasw.movie_service.service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.deltasw.movie_service.model.LibraryStats;
+import eu.deltasw.movie_service.model.Movie;
+import eu.deltasw.movie_service.model.MovieMutation;
+import eu.deltasw.movie_service.model.dto.LibraryStatsResponse;
+import eu.deltasw.movie_service.repository.LibraryStatsRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class LibraryStatsService {
+    // Only one replica rebuilds at a time
+    private static final long REBUILD_LOCK_KEY = 0x7374617473L;
+
+    private final LibraryStatsRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate chunkTransactionTemplate;
+
+    @Value("${movie.stats.rebuild.chunk-size}")
+    private int chunkSize;
+
+    public LibraryStatsService(LibraryStatsRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public record MovieState(boolean watched, Integer rating) {
+        public static MovieState of(Movie movie) {
+            return new MovieState(Boolean.TRUE.equals(movie.getWatched()), movie.getRating());
+        }
+
+        public static MovieState of(MovieMutation movie) {
+            return new MovieState(Boolean.TRUE.equals(movie.getWatched()), movie.getRating());
+        }
+
+        public static MovieState previous(MovieMutation movie) {
+            return new MovieState(Boolean.TRUE.equals(movie.getPreviousWatched()), movie.getPreviousRating());
+        }
+    }
+
+    @Getter
+    public static class Delta {
+        private long watched;
+        private long unwatched;
+        private long ratingCount;
+        private long ratingSum;
+        private final long[] ratings = new long[5];
+
+        public Delta add(MovieState state, int sign) {
+            if (state.watched()) {
+                watched += sign;
+            } else {
+                unwatched += sign;
+            }
+            // Only ratings from 1 to 5 count, older rows used 0 for unrated movies
+            Integer rating = state.rating();
+            if (rating != null && rating >= 1 && rating <= 5) {
+                ratingCount += sign;
+                ratingSum += (long) sign * rating;
+                ratings[rating - 1] += sign;
+            }
+            return this;
+        }
+
+        public Delta change(MovieState before, MovieState after) {
+            return add(before, -1).add(after, 1);
+        }
+    }
+
+    // Must run in the transaction of the change so the aggregate never drifts
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(String userId, Delta delta) {
+        repository.applyDelta(userId, delta);
+    }
+
+    // Libraries without a statistics row have never been changed
+    public long getVersion(String userId) {
+        return repository.findVersionByUserId(userId).orElse(0L);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int incrementVersionsOfWatchers(Collection<Integer> movieIds) {
+        return repository.incrementVersionsOfWatchers(movieIds);
+    }
+
+    public LibraryStatsResponse getStats(String userId) {
+        LibraryStats stats = repository.findById(userId)
+                .orElseGet(() -> new LibraryStats(userId, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+
+        Map<Integer, Long> ratings = new LinkedHashMap<>();
+        ratings.put(1, stats.getRating1());
+        ratings.put(2, stats.getRating2());
+        ratings.put(3, stats.getRating3());
+        ratings.put(4, stats.getRating4());
+        ratings.put(5, stats.getRating5());
+        Double averageRating = stats.getRatingCount() > 0
+                ? (double) stats.getRatingSum() / stats.getRatingCount()
+                : null;
+
+        return new LibraryStatsResponse(stats.getWatchedCount(), stats.getUnwatchedCount(), averageRating, ratings);
+    }
+
+    // The outer transaction only holds the advisory lock, users are recounted in short chunk
+    // transactions so their row locks do not hold up library changes for the whole run
+    @Scheduled(cron = "${movie.stats.rebuild.cron}")
+    public void rebuildAll() {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!repository.tryLock(REBUILD_LOCK_KEY)) {
+                log.info("Library statistics rebuild is already running");
+                return;
+            }
+
+            log.info("Rebuilding library statistics...");
+            Integer inserted = chunkTransactionTemplate.execute(chunk -> repository.insertMissing());
+            long rebuilt = 0;
+            String lastUserId = "";
+            while (true) {
+                String afterUserId = lastUserId;
+                List<String> userIds = chunkTransactionTemplate.execute(chunk -> {
+                    List<String> locked = repository.lockUserIdsAfter(afterUserId, chunkSize);
+                    if (!locked.isEmpty()) {
+                        repository.rebuild(locked);
+                    }
+                    return locked;
+                });
+                if (userIds == null || userIds.isEmpty()) {
+                    break;
+                }
+                rebuilt += userIds.size();
+                lastUserId = userIds.getLast();
+            }
+            log.info("Rebuilt library statistics for {} users, {} added", rebuilt, inserted);
+        });
+    }
+}
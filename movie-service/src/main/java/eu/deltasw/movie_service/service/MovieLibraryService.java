@@ -0,0 +1,180 @@
+package eu.deltasw.movie_service.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import eu.deltasw.common.model.dto.WatchInfoResponse;
+import eu.deltasw.movie_service.model.Movie;
+import eu.deltasw.movie_service.model.MovieView;
+import eu.deltasw.movie_service.model.dto.AddMovieRequest;
+import eu.deltasw.movie_service.model.dto.BatchMutationRequest;
+import eu.deltasw.movie_service.repository.MovieRepository;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class MovieLibraryService {
+    public static final String WATCHLIST_CACHE = "watchlist";
+    public static final String WATCHED_CACHE = "watched";
+    public static final String WATCH_INFO_CACHE = "watchInfo";
+    public static final String LIBRARY_VERSION_CACHE = "libraryVersion";
+
+    private final MovieRepository repository;
+    private final WatchInfoEnricher watchInfoEnricher;
+    private final LibraryStatsService statsService;
+    private final Cache watchlistCache;
+    private final Cache watchedCache;
+    private final Cache watchInfoCache;
+    private final Cache libraryVersionCache;
+
+    public MovieLibraryService(MovieRepository repository, WatchInfoEnricher watchInfoEnricher,
+            LibraryStatsService statsService, CacheManager cacheManager) {
+        this.repository = repository;
+        this.watchInfoEnricher = watchInfoEnricher;
+        this.statsService = statsService;
+        this.watchlistCache = cacheManager.getCache(WATCHLIST_CACHE);
+        this.watchedCache = cacheManager.getCache(WATCHED_CACHE);
+        this.watchInfoCache = cacheManager.getCache(WATCH_INFO_CACHE);
+        this.libraryVersionCache = cacheManager.getCache(LIBRARY_VERSION_CACHE);
+    }
+
+    // Every change to the library or to the watch info of its movies bumps the version
+    public long getLibraryVersion(String userId) {
+        return libraryVersionCache.get(userId, () -> statsService.getVersion(userId));
+    }
+
+    public List<MovieView> getWatchlist(String userId) {
+        return watchlistCache.get(userId, () -> repository.findByUserIdAndWatchedIsFalseOrWatchedIsNull(userId));
+    }
+
+    public List<MovieView> getWatched(String userId) {
+        return watchedCache.get(userId, () -> repository.findByUserIdAndWatchedIsTrue(userId));
+    }
+
+    // Only complete results are cached, partial ones are retried on the next request
+    @SuppressWarnings("unchecked")
+    public WatchInfoEnricher.Result getWatchInfo(String userId, List<MovieView> watchlist) {
+        Cache.ValueWrapper cached = watchInfoCache.get(userId);
+        if (cached != null) {
+            return new WatchInfoEnricher.Result((List<WatchInfoResponse>) cached.get(), false);
+        }
+
+        var movieIds = watchlist.stream()
+                .map(MovieView::getMovieId)
+                .toList();
+        WatchInfoEnricher.Result result = watchInfoEnricher.fetch(movieIds);
+        if (!result.partial()) {
+            watchInfoCache.put(userId, result.watchInfo());
+        }
+        return result;
+    }
+
+    @Transactional
+    public List<Movie> addMovies(String userId, List<AddMovieRequest> requests) {
+        var movies = requests.stream()
+                .map(request -> Movie.builder()
+                        .movieId(request.getMovieId())
+                        .title(request.getTitle())
+                        .poster(request.getPoster())
+                        .userId(userId)
+                        .build())
+                .toList();
+
+        // Ids come from a pooled sequence, so Hibernate can batch the inserts
+        var savedMovies = repository.saveAll(movies);
+        var delta = new LibraryStatsService.Delta();
+        savedMovies.forEach(movie -> delta.add(LibraryStatsService.MovieState.of(movie), 1));
+        statsService.apply(userId, delta);
+        evictUser(userId);
+        return savedMovies;
+    }
+
+    @Transactional
+    public List<Movie> applyBatch(String userId, BatchMutationRequest request) {
+        var movies = repository.findByUserIdAndIdIn(userId, request.getIds());
+        if (movies.isEmpty()) {
+            return movies;
+        }
+
+        // One upsert of the summed changes keeps the statistics in step with the batch
+        var delta = new LibraryStatsService.Delta();
+        movies.forEach(movie -> delta.add(LibraryStatsService.MovieState.of(movie), -1));
+        switch (request.getAction()) {
+            case WATCHED -> movies.forEach(movie -> movie.setWatched(true));
+            case RATE -> movies.forEach(movie -> movie.setRating(request.getRating()));
+            case DELETE -> repository.deleteByUserIdAndIdIn(userId, movies.stream().map(Movie::getId).toList());
+        }
+        if (request.getAction() != BatchMutationRequest.Action.DELETE) {
+            movies.forEach(movie -> delta.add(LibraryStatsService.MovieState.of(movie), 1));
+        }
+        statsService.apply(userId, delta);
+
+        evictUser(userId);
+        return movies;
+    }
+
+    // Inside a transaction the entries are evicted after commit, so a concurrent
+    // read cannot cache the state from before the change
+    public void evictUser(String userId) {
+        afterCommit(() -> evictUserNow(userId));
+    }
+
+    // Runs once per change in the shared consumer group, the replicas only evict their caches
+    @Transactional
+    public int watchInfoChanged(Collection<Integer> movieIds) {
+        return statsService.incrementVersionsOfWatchers(movieIds);
+    }
+
+    // Only the entries of this replica are scanned, the cache is bounded so this stays cheap
+    public void evictWatchInfo(Collection<Integer> movieIds) {
+        Set<Integer> updated = Set.copyOf(movieIds);
+        List<Object> userIds = new ArrayList<>();
+        if (watchInfoCache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache) {
+            nativeCache.asMap().forEach((userId, watchInfo) -> {
+                if (watchInfo instanceof List<?> responses && responses.stream().anyMatch(
+                        response -> response instanceof WatchInfoResponse info && updated.contains(info.getMovieId()))) {
+                    userIds.add(userId);
+                }
+            });
+        } else {
+            watchInfoCache.clear();
+        }
+        log.debug("Evicting watch info cache for {} users", userIds.size());
+        userIds.forEach(watchInfoCache::evict);
+    }
+
+    // Versions are read again from the database after a watch info change was committed
+    public void evictLibraryVersions() {
+        libraryVersionCache.clear();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void evictUserNow(String userId) {
+        log.debug("Evicting library caches for user {}", userId);
+        watchlistCache.evict(userId);
+        watchedCache.evict(userId);
+        watchInfoCache.evict(userId);
+        libraryVersionCache.evict(userId);
+    }
+}
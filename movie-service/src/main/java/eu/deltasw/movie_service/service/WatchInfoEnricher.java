@@ -0,0 +1,85 @@
+package eu.deltasw.movie_service.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import eu.deltasw.common.model.dto.WatchInfoRequest;
+import eu.deltasw.common.model.dto.WatchInfoResponse;
+import eu.deltasw.movie_service.data.WatchInfoClient;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class WatchInfoEnricher {
+    private final WatchInfoClient watchInfoClient;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${movie.watchlist.enrichment.chunk-size}")
+    private int chunkSize;
+
+    @Value("${movie.watchlist.enrichment.deadline}")
+    private Duration deadline;
+
+    @Value("${movie.watchlist.region}")
+    private String region;
+
+    public WatchInfoEnricher(WatchInfoClient watchInfoClient) {
+        this.watchInfoClient = watchInfoClient;
+    }
+
+    public record Result(List<WatchInfoResponse> watchInfo, boolean partial) {
+    }
+
+    // Fetch watch info in parallel chunks and keep whatever arrives within the
+    // deadline, the remaining movies are returned without watch info
+    public Result fetch(List<Integer> movieIds) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+
+        List<Future<List<WatchInfoResponse>>> futures = new ArrayList<>();
+        for (int from = 0; from < movieIds.size(); from += chunkSize) {
+            var chunk = new ArrayList<>(movieIds.subList(from, Math.min(from + chunkSize, movieIds.size())));
+            futures.add(executor.submit(() -> watchInfoClient.getWatchInfo(region, new WatchInfoRequest(chunk))));
+        }
+
+        List<WatchInfoResponse> watchInfo = new ArrayList<>(movieIds.size());
+        boolean partial = false;
+        for (Future<List<WatchInfoResponse>> future : futures) {
+            try {
+                long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+                watchInfo.addAll(future.get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                partial = true;
+            } catch (ExecutionException e) {
+                log.error("Error fetching watch info", e.getCause());
+                partial = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                partial = true;
+            }
+        }
+
+        if (partial) {
+            log.warn("Watch info incomplete after {} ms, got {} of {} movies", deadline.toMillis(),
+                    watchInfo.size(), movieIds.size());
+        }
+        return new Result(watchInfo, partial);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
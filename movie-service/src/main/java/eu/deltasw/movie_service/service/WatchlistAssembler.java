@@ -0,0 +1,62 @@
+package eu.deltasw.movie_service.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.deltasw.common.model.dto.WatchInfoResponse;
+import eu.deltasw.movie_service.model.MovieView;
+import eu.deltasw.movie_service.model.dto.WatchlistResponse;
+
+@Service
+public class WatchlistAssembler {
+    private final ObjectMapper objectMapper;
+
+    public WatchlistAssembler(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // Merge watch info by movieId and write each item straight to the response,
+    // so the full watchlist is never built on the heap
+    public StreamingResponseBody stream(List<MovieView> movies, List<WatchInfoResponse> watchInfo) {
+        Map<Integer, WatchInfoResponse> watchInfoByMovieId = index(watchInfo);
+        return outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                generator.writeStartArray();
+                for (MovieView movie : movies) {
+                    generator.writeObject(toResponse(movie, watchInfoByMovieId.get(movie.getMovieId())));
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+
+    private static Map<Integer, WatchInfoResponse> index(List<WatchInfoResponse> watchInfo) {
+        if (watchInfo == null || watchInfo.isEmpty()) {
+            return Map.of();
+        }
+        Map<Integer, WatchInfoResponse> watchInfoByMovieId = new HashMap<>(watchInfo.size() * 4 / 3 + 1);
+        for (WatchInfoResponse info : watchInfo) {
+            if (info.getMovieId() != null) {
+                watchInfoByMovieId.putIfAbsent(info.getMovieId(), info);
+            }
+        }
+        return watchInfoByMovieId;
+    }
+
+    private static WatchlistResponse toResponse(MovieView movie, WatchInfoResponse info) {
+        return new WatchlistResponse(
+                movie.getId(),
+                movie.getMovieId(),
+                movie.getTitle(),
+                movie.getPoster(),
+                info != null ? info.getUserScore() : null,
+                info != null ? info.getWatchProviders() : null);
+    }
+}
@@ -0,0 +1,216 @@
+package eu.deltasw.movie_service.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import eu.deltasw.common.model.dto.MovieNotifyRequest;
+import eu.deltasw.movie_service.data.NotificationClient;
+import eu.deltasw.movie_service.model.MovieDetails;
+import eu.deltasw.movie_service.model.ProcessedMovieEvent;
+import eu.deltasw.movie_service.model.WatchlistEntry;
+import eu.deltasw.movie_service.repository.MovieRepository;
+import eu.deltasw.movie_service.repository.ProcessedMovieEventRepository;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class WatchlistNotifier {
+    private final MovieRepository repository;
+    private final ProcessedMovieEventRepository processedEvents;
+    private final NotificationClient notificationClient;
+
+    @Value("${movie.notifications.page-size}")
+    private int pageSize;
+
+    @Value("${movie.notifications.chunk-size}")
+    private int chunkSize;
+
+    @Value("${movie.notifications.bulk-size}")
+    private int bulkSize;
+
+    @Value("${movie.notifications.resume.stalled-after}")
+    private Duration stalledAfter;
+
+    @Value("${movie.notifications.retention}")
+    private Duration retention;
+
+    public WatchlistNotifier(MovieRepository repository, ProcessedMovieEventRepository processedEvents,
+            NotificationClient notificationClient) {
+        this.repository = repository;
+        this.processedEvents = processedEvents;
+        this.notificationClient = notificationClient;
+    }
+
+    // Event ids by movie id, a movie updated by events without an id is notified without
+    // progress. A failed request to notification-service is thrown, so the events are delivered
+    // again and continue after the last user whose notification was sent.
+    public void notifyWatchers(Map<Integer, List<String>> eventIds) {
+        if (eventIds.values().stream().anyMatch(ids -> !ids.isEmpty())) {
+            Map<String, Integer> movieIds = new HashMap<>();
+            eventIds.forEach((movieId, ids) -> ids.forEach(id -> movieIds.put(id, movieId)));
+            processedEvents.insertMissing(String.join(",", movieIds.keySet()),
+                    movieIds.values().stream().map(String::valueOf).collect(Collectors.joining(",")),
+                    Instant.now());
+        }
+        Map<String, ProcessedMovieEvent> progress = processedEvents
+                .findAllById(eventIds.values().stream().flatMap(List::stream).toList()).stream()
+                .collect(Collectors.toMap(ProcessedMovieEvent::getEventId, Function.identity()));
+
+        // Movies with a new event start over, completed events are not notified again
+        Map<Integer, List<String>> open = new TreeMap<>();
+        Map<Integer, String> startAfter = new HashMap<>();
+        eventIds.forEach((movieId, ids) -> {
+            List<ProcessedMovieEvent> pending = ids.stream()
+                    .map(progress::get)
+                    .filter(Objects::nonNull)
+                    .filter(event -> event.getCompletedAt() == null)
+                    .toList();
+            if (!ids.isEmpty() && pending.isEmpty()) {
+                return;
+            }
+            open.put(movieId, pending.stream().map(ProcessedMovieEvent::getEventId).toList());
+            startAfter.put(movieId, pending.stream()
+                    .map(event -> Objects.requireNonNullElse(event.getNotifiedUserId(), ""))
+                    .min(Comparator.naturalOrder())
+                    .orElse(""));
+        });
+        if (open.isEmpty()) {
+            log.info("Watchers of the {} updated movies were notified already", eventIds.size());
+            return;
+        }
+
+        Map<Integer, MovieDetails> details = repository.findDetailsByMovieIdIn(List.copyOf(open.keySet())).stream()
+                .collect(Collectors.toMap(MovieDetails::getMovieId, Function.identity()));
+        var batch = new NotificationBatch(details, open);
+        open.keySet().forEach(movieId -> notifyWatchers(batch, movieId, startAfter.get(movieId)));
+        batch.flush();
+    }
+
+    // Walk the watchlist of the movie in user id order one page at a time and send each full
+    // chunk before reading the next page, so memory stays flat however many users watch it
+    private void notifyWatchers(NotificationBatch batch, int movieId, String afterUserId) {
+        batch.start(movieId);
+        if (batch.details.containsKey(movieId)) {
+            List<WatchlistEntry> page;
+            do {
+                page = repository.findWatchlistEntriesAfter(List.of(movieId), movieId, afterUserId, pageSize);
+                for (WatchlistEntry entry : page) {
+                    batch.add(entry);
+                }
+                if (!page.isEmpty()) {
+                    afterUserId = page.getLast().getUserId();
+                }
+            } while (page.size() == pageSize);
+        }
+        batch.finish();
+    }
+
+    // Picks up events whose retries were given up or whose replica stopped halfway
+    @Scheduled(fixedDelayString = "${movie.notifications.resume.interval}")
+    public void resumeStalled() {
+        Instant now = Instant.now();
+        Instant before = now.minus(stalledAfter);
+        Map<Integer, List<String>> stalled = processedEvents.findStalled(before, PageRequest.of(0, bulkSize))
+                .stream()
+                .collect(Collectors.groupingBy(ProcessedMovieEvent::getMovieId,
+                        Collectors.mapping(ProcessedMovieEvent::getEventId, Collectors.toList())));
+        stalled.values().removeIf(ids -> processedEvents.claimStalled(ids, before, now) == 0);
+        if (!stalled.isEmpty()) {
+            log.info("Resuming watchlist notifications of {} movies", stalled.size());
+            notifyWatchers(stalled);
+        }
+
+        int deleted = processedEvents.deleteCompletedBefore(now.minus(retention));
+        if (deleted > 0) {
+            log.debug("Deleted {} notified movie events", deleted);
+        }
+    }
+
+    private class NotificationBatch {
+        private final Map<Integer, MovieDetails> details;
+        private final Map<Integer, List<String>> eventIds;
+        private final List<MovieNotifyRequest> pending = new ArrayList<>();
+        // Movies whose remaining watchers are all in the pending requests
+        private final List<Integer> finished = new ArrayList<>();
+        private Integer movieId;
+        private List<String> userIds = new ArrayList<>();
+        private int pendingUsers;
+
+        NotificationBatch(Map<Integer, MovieDetails> details, Map<Integer, List<String>> eventIds) {
+            this.details = details;
+            this.eventIds = eventIds;
+        }
+
+        void start(int movieId) {
+            this.movieId = movieId;
+        }
+
+        void add(WatchlistEntry entry) {
+            userIds.add(entry.getUserId());
+            pendingUsers++;
+            if (pendingUsers >= chunkSize) {
+                send();
+            }
+        }
+
+        void finish() {
+            closeRequest();
+            finished.add(movieId);
+            movieId = null;
+            if (pending.size() >= bulkSize) {
+                send();
+            }
+        }
+
+        void flush() {
+            send();
+        }
+
+        private void closeRequest() {
+            if (userIds.isEmpty()) {
+                return;
+            }
+            MovieDetails movie = details.get(movieId);
+            var notifyRequest = new MovieNotifyRequest();
+            notifyRequest.setUserIds(userIds);
+            notifyRequest.setMovieTitle(movie != null ? movie.getTitle() : null);
+            notifyRequest.setMoviePoster(movie != null ? movie.getPoster() : null);
+            pending.add(notifyRequest);
+            userIds = new ArrayList<>();
+        }
+
+        // Progress is stored only after notification-service accepted the requests
+        private void send() {
+            String notifiedUntil = userIds.isEmpty() ? null : userIds.getLast();
+            closeRequest();
+            if (!pending.isEmpty()) {
+                notificationClient.notifyAll(pending);
+            }
+
+            List<String> completed = finished.stream().flatMap(id -> eventIds.get(id).stream()).toList();
+            if (!completed.isEmpty()) {
+                processedEvents.markCompleted(completed, Instant.now());
+            }
+            if (notifiedUntil != null && !eventIds.get(movieId).isEmpty()) {
+                processedEvents.markNotifiedUntil(eventIds.get(movieId), notifiedUntil);
+            }
+            finished.clear();
+            pending.clear();
+            pendingUsers = 0;
+        }
+    }
+}
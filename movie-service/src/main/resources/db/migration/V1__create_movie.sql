@@ -0,0 +1,15 @@
+-- Movie table as mapped by the entity, ids come from the pooled movie_id_seq sequence
+CREATE SEQUENCE IF NOT EXISTS movie_id_seq;
+
+CREATE TABLE IF NOT EXISTS movie (
+    id BIGINT PRIMARY KEY DEFAULT nextval('movie_id_seq'),
+    user_id VARCHAR(255),
+    movie_id INTEGER,
+    title VARCHAR(255),
+    poster VARCHAR(255),
+    watched BOOLEAN,
+    rating INTEGER
+);
+
+-- Movie ids are allocated in blocks of 50 so inserts can be batched
+ALTER SEQUENCE movie_id_seq INCREMENT BY 50;
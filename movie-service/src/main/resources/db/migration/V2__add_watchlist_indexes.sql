@@ -0,0 +1,5 @@
+-- Per-user watchlist and watched lists
+CREATE INDEX IF NOT EXISTS movie_user_id_watched_idx ON movie (user_id, watched);
+
+-- Users with a movie still on their watchlist
+CREATE INDEX IF NOT EXISTS movie_movie_id_watched_idx ON movie (movie_id, watched);
@@ -0,0 +1,12 @@
+-- Movie events written in the same transaction as the library change and
+-- relayed to Kafka by OutboxRelay
+CREATE SEQUENCE IF NOT EXISTS movie_event_outbox_id_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS movie_event_outbox (
+    id BIGINT PRIMARY KEY DEFAULT nextval('movie_event_outbox_id_seq'),
+    event_type VARCHAR(32) NOT NULL,
+    user_id VARCHAR(255),
+    movie_id INTEGER,
+    rating INTEGER,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
@@ -0,0 +1,2 @@
+-- Keyset scan of the users watching a movie, used by the notification fan-out
+CREATE INDEX IF NOT EXISTS movie_movie_id_user_id_idx ON movie (movie_id, user_id);
@@ -0,0 +1,31 @@
+-- Per-user library aggregates, maintained incrementally by movie-service
+CREATE TABLE IF NOT EXISTS library_stats (
+    user_id VARCHAR(255) PRIMARY KEY,
+    watched_count BIGINT NOT NULL DEFAULT 0,
+    unwatched_count BIGINT NOT NULL DEFAULT 0,
+    rating_count BIGINT NOT NULL DEFAULT 0,
+    rating_sum BIGINT NOT NULL DEFAULT 0,
+    rating_1 BIGINT NOT NULL DEFAULT 0,
+    rating_2 BIGINT NOT NULL DEFAULT 0,
+    rating_3 BIGINT NOT NULL DEFAULT 0,
+    rating_4 BIGINT NOT NULL DEFAULT 0,
+    rating_5 BIGINT NOT NULL DEFAULT 0
+);
+
+-- Only ratings from 1 to 5 count, older rows used 0 for unrated movies
+INSERT INTO library_stats (user_id, watched_count, unwatched_count, rating_count, rating_sum,
+        rating_1, rating_2, rating_3, rating_4, rating_5)
+    SELECT user_id,
+        COUNT(*) FILTER (WHERE watched IS TRUE),
+        COUNT(*) FILTER (WHERE watched IS NOT TRUE),
+        COUNT(*) FILTER (WHERE rating BETWEEN 1 AND 5),
+        COALESCE(SUM(rating) FILTER (WHERE rating BETWEEN 1 AND 5), 0),
+        COUNT(*) FILTER (WHERE rating = 1),
+        COUNT(*) FILTER (WHERE rating = 2),
+        COUNT(*) FILTER (WHERE rating = 3),
+        COUNT(*) FILTER (WHERE rating = 4),
+        COUNT(*) FILTER (WHERE rating = 5)
+    FROM movie
+    WHERE user_id IS NOT NULL
+    GROUP BY user_id
+    ON CONFLICT (user_id) DO NOTHING;
@@ -0,0 +1,2 @@
+-- Bumped by every change to a user's library, used as ETag of the list endpoints
+ALTER TABLE library_stats ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
@@ -0,0 +1,3 @@
+-- Outbox ids are drawn one at a time, pooled blocks handed out per replica did not follow
+-- the order of the changes
+ALTER SEQUENCE movie_event_outbox_id_seq INCREMENT BY 1;
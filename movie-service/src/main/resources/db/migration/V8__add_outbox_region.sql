@@ -0,0 +1,2 @@
+-- Same outbox columns as tmdb-service, both are relayed by the common OutboxRelay
+ALTER TABLE movie_event_outbox ADD COLUMN IF NOT EXISTS region VARCHAR(8);
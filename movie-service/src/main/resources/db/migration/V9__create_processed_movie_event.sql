@@ -0,0 +1,13 @@
+-- Watchlist notifications per WATCH_INFO_UPDATED event. A redelivered event or a retry after a
+-- failed request continues after the last notified user, completed events are not notified again.
+CREATE TABLE IF NOT EXISTS processed_movie_event (
+    event_id VARCHAR(64) PRIMARY KEY,
+    movie_id INTEGER NOT NULL,
+    notified_user_id VARCHAR(255),
+    attempted_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    completed_at TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS processed_movie_event_pending ON processed_movie_event (attempted_at)
+    WHERE completed_at IS NULL;
+CREATE INDEX IF NOT EXISTS processed_movie_event_completed_at ON processed_movie_event (completed_at);
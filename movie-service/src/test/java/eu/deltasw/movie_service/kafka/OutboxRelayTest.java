@@ -0,0 +1,108 @@
+package eu.deltasw.movie_service.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.deltasw.common.events.model.EventType;
+import eu.deltasw.common.events.model.MovieEvent;
+import eu.deltasw.common.outbox.MovieEventOutbox;
+import eu.deltasw.common.outbox.OutboxRelay;
+import eu.deltasw.common.service.MovieEventProducer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+
+@JdbcTest
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+class OutboxRelayTest {
+    private static final String TABLE = "movie_event_outbox";
+
+    // The application class imports the Kafka and security configurations, the slice only needs JDBC
+    @SpringBootConfiguration
+    static class Config {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MovieEventProducer producer;
+    private List<String> sent;
+    private MovieEventOutbox outbox;
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        producer = mock(MovieEventProducer.class);
+        sent = new ArrayList<>();
+        when(producer.sendMovieEvent(any(), anyString())).thenAnswer(invocation -> {
+            MovieEvent event = invocation.getArgument(0);
+            sent.add(event.getEventType() + ":" + event.getMovieId());
+            return CompletableFuture.completedFuture(null);
+        });
+        outbox = new MovieEventOutbox(jdbcTemplate, TABLE);
+        relay = new OutboxRelay(jdbcTemplate, new TransactionTemplate(transactionManager), producer, TABLE, 1L, "",
+                2, Duration.ofSeconds(1), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void eventsLeaveInTheOrderTheyWereWritten() {
+        outbox.enqueue(event(EventType.ADD, 10));
+        outbox.enqueueAll(List.of(event(EventType.WATCHED, 10), event(EventType.RATE, 10)));
+        outbox.enqueue(event(EventType.DELETE, 10));
+
+        relay.relay();
+
+        assertEquals(List.of("ADD:10", "WATCHED:10", "RATE:10", "DELETE:10"), sent);
+        assertEquals(0, count());
+    }
+
+    @Test
+    void failedSendKeepsTheEvents() {
+        doReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")))
+                .when(producer).sendMovieEvent(any(), anyString());
+        outbox.enqueue(event(EventType.ADD, 10));
+
+        relay.relay();
+
+        assertEquals(1, count());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void eventsNeedTheTransactionOfTheirChange() {
+        assertThrows(IllegalTransactionStateException.class, () -> outbox.enqueue(event(EventType.ADD, 10)));
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + TABLE, Integer.class);
+    }
+
+    private static MovieEvent event(EventType eventType, int movieId) {
+        return new MovieEvent(eventType, "alice", movieId, null);
+    }
+}
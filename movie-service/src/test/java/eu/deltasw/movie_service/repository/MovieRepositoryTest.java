@@ -0,0 +1,141 @@
+package eu.deltasw.movie_service.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import eu.deltasw.movie_service.MovieServiceApplication;
+import eu.deltasw.movie_service.model.Movie;
+import eu.deltasw.movie_service.model.MovieMutation;
+import eu.deltasw.movie_service.model.WatchlistEntry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+
+@DataJpaTest
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+class MovieRepositoryTest {
+
+    // The application class imports the Kafka and security configurations, the slice only needs JPA
+    @SpringBootConfiguration
+    @AutoConfigurationPackage(basePackageClasses = MovieServiceApplication.class)
+    static class Config {
+    }
+
+    @Autowired
+    private MovieRepository repository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void watchlistPagesResumeAfterTheLastEntry() {
+        for (String userId : List.of("alice", "bob", "carol")) {
+            movie(userId, 10, false, null);
+            movie(userId, 20, null, null);
+        }
+        movie("dave", 10, true, 4);
+        movie("erin", 30, false, null);
+        entityManager.flush();
+
+        List<String> entries = new ArrayList<>();
+        int afterMovieId = 0;
+        String afterUserId = "";
+        List<WatchlistEntry> page;
+        do {
+            page = repository.findWatchlistEntriesAfter(List.of(10, 20), afterMovieId, afterUserId, 2);
+            for (WatchlistEntry entry : page) {
+                entries.add(entry.getMovieId() + ":" + entry.getUserId());
+            }
+            if (!page.isEmpty()) {
+                afterMovieId = page.getLast().getMovieId();
+                afterUserId = page.getLast().getUserId();
+            }
+        } while (page.size() == 2);
+
+        // Pages end in the middle of movie 10, watched movies and other movie ids are left out
+        assertEquals(List.of("10:alice", "10:bob", "10:carol", "20:alice", "20:bob", "20:carol"), entries);
+    }
+
+    @Test
+    void markWatchedChangesOnlyTheOwnersMovie() {
+        Movie movie = movie("alice", 10, false, 3);
+        entityManager.flush();
+
+        assertTrue(repository.markWatched(movie.getId(), "bob").isEmpty());
+        MovieMutation mutation = repository.markWatched(movie.getId(), "alice").orElseThrow();
+
+        assertEquals(movie.getId(), mutation.getId());
+        assertTrue(mutation.getWatched());
+        assertFalse(mutation.getPreviousWatched());
+        assertEquals(3, mutation.getPreviousRating());
+        assertTrue(reload(movie).getWatched());
+    }
+
+    @Test
+    void rateReturnsThePreviousRatingToTheOwnerOnly() {
+        Movie movie = movie("alice", 10, true, null);
+        entityManager.flush();
+
+        assertTrue(repository.rate(movie.getId(), "bob", 5).isEmpty());
+        assertNull(reload(movie).getRating());
+
+        MovieMutation mutation = repository.rate(movie.getId(), "alice", 5).orElseThrow();
+        assertEquals(5, mutation.getRating());
+        assertNull(mutation.getPreviousRating());
+        assertTrue(mutation.getPreviousWatched());
+        assertEquals(5, reload(movie).getRating());
+    }
+
+    @Test
+    void deleteOwnedKeepsMoviesOfOtherUsers() {
+        Movie movie = movie("alice", 10, true, 4);
+        entityManager.flush();
+
+        assertTrue(repository.deleteOwned(movie.getId(), "bob").isEmpty());
+        assertTrue(repository.existsById(movie.getId()));
+
+        MovieMutation mutation = repository.deleteOwned(movie.getId(), "alice").orElseThrow();
+        assertEquals(10, mutation.getMovieId());
+        assertEquals(4, mutation.getPreviousRating());
+        entityManager.clear();
+        assertFalse(repository.existsById(movie.getId()));
+    }
+
+    @Test
+    void batchDeleteSkipsMoviesOfOtherUsers() {
+        Movie own = movie("alice", 10, false, null);
+        Movie other = movie("bob", 20, false, null);
+        entityManager.flush();
+
+        assertEquals(1, repository.deleteByUserIdAndIdIn("alice", List.of(own.getId(), other.getId())));
+        entityManager.clear();
+        assertFalse(repository.existsById(own.getId()));
+        assertTrue(repository.existsById(other.getId()));
+    }
+
+    private Movie movie(String userId, int movieId, Boolean watched, Integer rating) {
+        return entityManager.persist(Movie.builder()
+                .userId(userId)
+                .movieId(movieId)
+                .title("Movie " + movieId)
+                .watched(watched)
+                .rating(rating)
+                .build());
+    }
+
+    private Movie reload(Movie movie) {
+        entityManager.clear();
+        return entityManager.find(Movie.class, movie.getId());
+    }
+}
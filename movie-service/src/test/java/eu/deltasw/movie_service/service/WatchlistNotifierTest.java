@@ -0,0 +1,132 @@
+package eu.deltasw.movie_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import eu.deltasw.common.model.dto.MovieNotifyRequest;
+import eu.deltasw.movie_service.MovieServiceApplication;
+import eu.deltasw.movie_service.data.NotificationClient;
+import eu.deltasw.movie_service.model.Movie;
+import eu.deltasw.movie_service.model.ProcessedMovieEvent;
+import feign.FeignException;
+import feign.Request;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+
+@DataJpaTest
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@Import(WatchlistNotifier.class)
+@TestPropertySource(properties = {
+        "movie.notifications.page-size=2",
+        "movie.notifications.chunk-size=2",
+        "movie.notifications.bulk-size=10",
+        "movie.notifications.retention=7d",
+        "movie.notifications.resume.stalled-after=10m" })
+class WatchlistNotifierTest {
+
+    // The application class imports the Kafka and security configurations, the slice only needs JPA
+    @SpringBootConfiguration
+    @AutoConfigurationPackage(basePackageClasses = MovieServiceApplication.class)
+    static class Config {
+    }
+
+    @Autowired
+    private WatchlistNotifier notifier;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockitoBean
+    private NotificationClient notificationClient;
+
+    private final List<String> sent = new ArrayList<>();
+    private int failAtRequest;
+
+    @BeforeEach
+    void setUp() {
+        for (String userId : List.of("alice", "bob", "carol")) {
+            movie(userId, 10);
+        }
+        movie("dave", 20);
+        entityManager.flush();
+
+        doAnswer(invocation -> {
+            if (--failAtRequest == 0) {
+                Request request = Request.create(Request.HttpMethod.POST, "/notify/bulk", Map.of(), null,
+                        StandardCharsets.UTF_8, null);
+                throw new FeignException.ServiceUnavailable("notification-service down", request, null, null);
+            }
+            for (MovieNotifyRequest notifyRequest : invocation.<List<MovieNotifyRequest>>getArgument(0)) {
+                sent.add(notifyRequest.getMovieTitle() + ":" + notifyRequest.getUserIds());
+            }
+            return null;
+        }).when(notificationClient).notifyAll(anyList());
+    }
+
+    @Test
+    void retryContinuesAfterTheLastNotifiedUser() {
+        Map<Integer, List<String>> events = Map.of(10, List.of("tmdb-1"), 20, List.of("tmdb-2"));
+        failAtRequest = 2;
+
+        assertThrows(FeignException.class, () -> notifier.notifyWatchers(events));
+        assertEquals(List.of("Movie 10:[alice, bob]"), sent);
+
+        // The redelivered events read their progress afresh, like a new poll does
+        entityManager.clear();
+        notifier.notifyWatchers(events);
+        assertEquals(List.of("Movie 10:[alice, bob]", "Movie 10:[carol]", "Movie 20:[dave]"), sent);
+        entityManager.clear();
+        assertNotNull(entityManager.find(ProcessedMovieEvent.class, "tmdb-1").getCompletedAt());
+        assertNotNull(entityManager.find(ProcessedMovieEvent.class, "tmdb-2").getCompletedAt());
+
+        entityManager.clear();
+        notifier.notifyWatchers(events);
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    void newEventOfANotifiedMovieNotifiesAgain() {
+        notifier.notifyWatchers(Map.of(20, List.of("tmdb-2")));
+        entityManager.clear();
+
+        notifier.notifyWatchers(Map.of(20, List.of("tmdb-2", "tmdb-3")));
+
+        assertEquals(List.of("Movie 20:[dave]", "Movie 20:[dave]"), sent);
+    }
+
+    @Test
+    void eventsWithoutIdAreNotifiedEveryTime() {
+        notifier.notifyWatchers(Map.of(20, List.of()));
+        notifier.notifyWatchers(Map.of(20, List.of()));
+
+        assertEquals(List.of("Movie 20:[dave]", "Movie 20:[dave]"), sent);
+    }
+
+    private void movie(String userId, int movieId) {
+        entityManager.persist(Movie.builder()
+                .userId(userId)
+                .movieId(movieId)
+                .title("Movie " + movieId)
+                .watched(false)
+                .build());
+    }
+}
@@ -1,5 +1,7 @@
 package eu.deltasw.notification_service.controller;
 
+import java.util.List;
+
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -27,4 +29,12 @@ public class NotificationController {
         emailService.sendNotification(notifyRequest);
         return ResponseEntity.noContent().<Void>build();
     }
+
+    @PostMapping("/notify/bulk")
+    public ResponseEntity<?> notifyAll(@Valid @RequestBody List<@Valid MovieNotifyRequest> notifyRequests) {
+        logger.info("Received {} notification requests", notifyRequests.size());
+        // Run email sending async
+        notifyRequests.forEach(emailService::sendNotification);
+        return ResponseEntity.noContent().<Void>build();
+    }
 }
@@ -5,12 +5,16 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Import;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import eu.deltasw.common.concurrent.autoconfigure.VirtualThreadsAutoConfiguration;
 import eu.deltasw.common.exception.autoconfigure.ExceptionHandlerAutoConfiguration;
+import eu.deltasw.common.outbox.autoconfigure.MovieEventOutboxAutoConfiguration;
 import eu.deltasw.common.security.autoconfigure.MovieEventProducerAutoConfiguration;
 
 @EnableScheduling
 @SpringBootApplication
-@Import({ ExceptionHandlerAutoConfiguration.class, MovieEventProducerAutoConfiguration.class })
+@Import({ ExceptionHandlerAutoConfiguration.class, MovieEventProducerAutoConfiguration.class,
+        VirtualThreadsAutoConfiguration.class,
+        MovieEventOutboxAutoConfiguration.class })
 public class TmdbServiceApplication {
 
     public static void main(String[] args) {
@@ -1,61 +1,198 @@
 package eu.deltasw.tmdb_service.component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import eu.deltasw.common.events.model.MovieEvent;
+import eu.deltasw.common.service.MovieEventProducer;
 import eu.deltasw.tmdb_service.model.Movie;
+import eu.deltasw.tmdb_service.model.ProviderIds;
 import eu.deltasw.tmdb_service.repository.MovieRepository;
+import eu.deltasw.tmdb_service.repository.ProcessedMovieEventRepository;
+import eu.deltasw.tmdb_service.service.TmdbFanOut;
+import eu.deltasw.tmdb_service.service.WatchProvidersFingerprint;
 import eu.deltasw.tmdb_service.service.WatchProvidersMapperService;
 import info.movito.themoviedbapi.TmdbApi;
-import info.movito.themoviedbapi.model.core.watchproviders.WatchProviders;
-import info.movito.themoviedbapi.tools.TmdbException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 @Component
 @Slf4j
 public class MovieEventsConsumer {
     private final MovieRepository repository;
+    private final ProcessedMovieEventRepository processedEvents;
     private final TmdbApi tmdb;
+    private final TmdbFanOut fanOut;
     private final WatchProvidersMapperService watchProvidersMapperService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration freshness;
+    private final Duration dedupeRetention;
+    private final Counter duplicates;
+    private final Counter fresh;
+    private final Counter fetched;
+    private final Counter failed;
 
-    public MovieEventsConsumer(MovieRepository repository, @Value("${tmdb.key}") String tmdbKey,
-            WatchProvidersMapperService watchProvidersMapperService) {
+    public MovieEventsConsumer(MovieRepository repository, ProcessedMovieEventRepository processedEvents,
+            TmdbApi tmdb, TmdbFanOut fanOut,
+            WatchProvidersMapperService watchProvidersMapperService,
+            TransactionTemplate transactionTemplate,
+            @Value("${tmdb.watch-providers.freshness}") Duration freshness,
+            @Value("${tmdb.movie-events.dedupe.retention}") Duration dedupeRetention,
+            MeterRegistry meterRegistry) {
         this.repository = repository;
-        tmdb = new TmdbApi(tmdbKey);
+        this.processedEvents = processedEvents;
+        this.tmdb = tmdb;
+        this.fanOut = fanOut;
         this.watchProvidersMapperService = watchProvidersMapperService;
+        this.transactionTemplate = transactionTemplate;
+        this.freshness = freshness;
+        this.dedupeRetention = dedupeRetention;
+        this.duplicates = meterRegistry.counter("tmdb.movie_events.add", "result", "duplicate");
+        this.fresh = meterRegistry.counter("tmdb.movie_events.add", "result", "fresh");
+        this.fetched = meterRegistry.counter("tmdb.movie_events.add", "result", "fetched");
+        this.failed = meterRegistry.counter("tmdb.movie_events.add", "result", "failed");
     }
 
-    @KafkaListener(topics = "${movie.events.topic}", groupId = "${spring.kafka.consumer.group-id}", containerFactory = "kafkaListenerContainerFactory")
-    public void consumeMovieEvent(MovieEvent event) {
-        log.info("Received movie event: {}", event.toString());
-
-        switch (event.getEventType()) {
-            case ADD:
-                log.info("Processing MOVIE_ADDED for movieId: {}", event.getMovieId());
-
-                Movie movie = repository.findByMovieId(event.getMovieId())
-                        .orElseGet(() -> {
-                            Movie newMovie = new Movie();
-                            newMovie.setMovieId(event.getMovieId());
-                            return newMovie;
-                        });
-
-                try {
-                    WatchProviders watchProviders = tmdb.getMovies().getWatchProviders(movie.getMovieId())
-                            .getResults().get("GR");
-                    movie.setWatchProviders(watchProvidersMapperService.convertTo(watchProviders));
-                } catch (TmdbException e) {
-                    log.error("Error getting watch providers", e);
-                }
+    @KafkaListener(topics = "${movie.events.topic}", groupId = "${spring.kafka.consumer.group-id}", containerFactory = "batchKafkaListenerContainerFactory")
+    public void consumeMovieEvents(List<ConsumerRecord<String, MovieEvent>> records) {
+        log.info("Received {} movie events", records.size());
+
+        // The outbox relay delivers at least once, events already handled are dropped by their id
+        Map<ConsumerRecord<String, MovieEvent>, String> eventIds = new HashMap<>();
+        for (ConsumerRecord<String, MovieEvent> record : records) {
+            Header header = record.headers().lastHeader(MovieEventProducer.EVENT_ID_HEADER);
+            if (header != null) {
+                eventIds.put(record, new String(header.value(), StandardCharsets.UTF_8));
+            }
+        }
+        Set<String> processed = eventIds.isEmpty() ? Set.of()
+                : Set.copyOf(processedEvents.findProcessed(Set.copyOf(eventIds.values())));
 
-                repository.save(movie);
-                break;
-            case RATE, DELETE, WATCH_INFO_UPDATED:
-                break;
-            default:
-                log.warn("Received unknown event type: {}", event.getEventType());
+        // The same movie added by many users within the poll is fetched once
+        Set<Integer> movieIds = new LinkedHashSet<>();
+        List<String> handledEventIds = new ArrayList<>();
+        for (ConsumerRecord<String, MovieEvent> record : records) {
+            MovieEvent event = record.value();
+            if (event == null || event.getEventType() == null) {
+                continue;
+            }
+            switch (event.getEventType()) {
+                case ADD:
+                    String eventId = eventIds.get(record);
+                    if (eventId != null && processed.contains(eventId)) {
+                        duplicates.increment();
+                        break;
+                    }
+                    if (eventId != null) {
+                        handledEventIds.add(eventId);
+                    }
+                    if (event.getMovieId() != null) {
+                        movieIds.add(event.getMovieId());
+                    }
+                    break;
+                case RATE, WATCHED, DELETE, WATCH_INFO_UPDATED, LIBRARY_VERSIONS_UPDATED:
+                    break;
+                default:
+                    log.warn("Received unknown event type: {}", event.getEventType());
+            }
         }
+        if (movieIds.isEmpty()) {
+            upsert(Map.of(), Set.of(), handledEventIds);
+            return;
+        }
+
+        // Movies whose providers were fetched within the freshness window need no TMDb call
+        Instant freshAfter = Instant.now().minus(freshness);
+        Map<Integer, Movie> stored = repository.findByMovieIdIn(List.copyOf(movieIds)).stream()
+                .collect(Collectors.toMap(Movie::getMovieId, Function.identity()));
+        List<Integer> stale = movieIds.stream()
+                .filter(movieId -> {
+                    Movie movie = stored.get(movieId);
+                    return movie == null || movie.getWatchProvidersUpdatedAt() == null
+                            || movie.getWatchProvidersUpdatedAt().isBefore(freshAfter);
+                })
+                .toList();
+        fresh.increment(movieIds.size() - stale.size());
+        if (stale.isEmpty()) {
+            upsert(Map.of(), Set.of(), handledEventIds);
+            return;
+        }
+
+        // Providers of all regions come with the one call
+        Map<Integer, Map<String, ProviderIds>> watchProviders = new HashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+        fanOut.<Integer, Map<String, ProviderIds>>fetchAll(stale, movieId -> watchProvidersMapperService.convertTo(
+                tmdb.getMovies().getWatchProviders(movieId).getResults()))
+                .forEach(outcome -> {
+                    if (outcome.succeeded()) {
+                        watchProviders.put(outcome.item(), outcome.result());
+                        fetched.increment();
+                    } else {
+                        log.error("Error getting watch providers for movie {}: {}", outcome.item(),
+                                outcome.error().getMessage());
+                        failed.increment();
+                        // New movies are stored anyway, their providers are filled in by the next ADD or refresh
+                        if (!stored.containsKey(outcome.item())) {
+                            missing.add(outcome.item());
+                        }
+                    }
+                });
+
+        upsert(watchProviders, missing, handledEventIds);
+        log.info("Processed {} added movies, {} fetched from TMDb, {} still fresh", movieIds.size(),
+                watchProviders.size(), movieIds.size() - stale.size());
+    }
+
+    @Scheduled(cron = "${tmdb.movie-events.dedupe.cleanup-cron}")
+    public void deleteProcessedEventIds() {
+        int deleted = processedEvents.deleteProcessedBefore(Instant.now().minus(dedupeRetention));
+        log.debug("Deleted {} processed movie event ids", deleted);
+    }
+
+    // Changed and new rows are written in one transaction as JDBC batches, together with
+    // the ids of the handled events so a redelivery after a failure is processed again
+    private void upsert(Map<Integer, Map<String, ProviderIds>> watchProviders, Set<Integer> missing,
+            List<String> handledEventIds) {
+        if (watchProviders.isEmpty() && missing.isEmpty() && handledEventIds.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!handledEventIds.isEmpty()) {
+                processedEvents.markProcessed(String.join(",", handledEventIds), now);
+            }
+            Map<Integer, Movie> movies = repository.findByMovieIdIn(List.copyOf(watchProviders.keySet())).stream()
+                    .collect(Collectors.toMap(Movie::getMovieId, Function.identity()));
+            watchProviders.forEach((movieId, watchProviderIds) -> {
+                Movie movie = movies.computeIfAbsent(movieId, id -> Movie.builder().movieId(id).build());
+                long fingerprint = WatchProvidersFingerprint.of(watchProviderIds);
+                if (!Objects.equals(movie.getWatchProvidersFingerprint(), fingerprint)) {
+                    movie.setWatchProviderIds(watchProviderIds);
+                    movie.setWatchProvidersFingerprint(fingerprint);
+                }
+                movie.setWatchProvidersUpdatedAt(now);
+            });
+            missing.forEach(movieId -> movies.put(movieId, Movie.builder().movieId(movieId).build()));
+            repository.saveAll(movies.values());
+        });
     }
-}
\ No newline at end of file
+}
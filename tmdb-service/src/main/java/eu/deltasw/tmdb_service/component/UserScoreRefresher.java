@@ -0,0 +1,101 @@
+package eu.deltasw.tmdb_service.component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import eu.deltasw.tmdb_service.model.Movie;
+import eu.deltasw.tmdb_service.repository.MovieRepository;
+import eu.deltasw.tmdb_service.repository.RefreshCheckpointRepository;
+import eu.deltasw.tmdb_service.service.TmdbFanOut;
+import info.movito.themoviedbapi.TmdbApi;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+@Component
+@Slf4j
+public class UserScoreRefresher {
+    private static final String JOB = "user-scores";
+
+    private final MovieRepository repository;
+    private final RefreshCheckpointRepository checkpoints;
+    private final TmdbApi tmdb;
+    private final TmdbFanOut fanOut;
+    private final int batchSize;
+    private final Duration maxAge;
+    private final Duration retryAfter;
+    private final Duration lease;
+    private final String owner = UUID.randomUUID().toString();
+    private final AtomicLong stale = new AtomicLong();
+    private final Counter refreshed;
+    private final Counter failed;
+
+    public UserScoreRefresher(MovieRepository repository, RefreshCheckpointRepository checkpoints, TmdbApi tmdb,
+            TmdbFanOut fanOut,
+            @Value("${tmdb.user-score.refresh.batch-size}") int batchSize,
+            @Value("${tmdb.user-score.max-age}") Duration maxAge,
+            @Value("${tmdb.user-score.refresh.retry-after}") Duration retryAfter,
+            @Value("${tmdb.user-score.refresh.lease}") Duration lease,
+            MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.checkpoints = checkpoints;
+        this.tmdb = tmdb;
+        this.fanOut = fanOut;
+        this.batchSize = batchSize;
+        this.maxAge = maxAge;
+        this.retryAfter = retryAfter;
+        this.lease = lease;
+        this.refreshed = meterRegistry.counter("tmdb.user_score.refreshed");
+        this.failed = meterRegistry.counter("tmdb.user_score.failed");
+        meterRegistry.gauge("tmdb.user_score.stale", stale);
+    }
+
+    // Refreshes the oldest scores first, movies that were never scored come before all others
+    @Scheduled(fixedDelayString = "${tmdb.user-score.refresh.interval}")
+    public void refreshUserScores() {
+        // Only one replica refreshes at a time, the others would fetch the same movies
+        Instant now = Instant.now();
+        if (checkpoints.claim(JOB, owner, now, now.plus(lease), false) == 0) {
+            return;
+        }
+        try {
+            refreshBatch();
+        } finally {
+            checkpoints.complete(JOB, owner);
+        }
+    }
+
+    private void refreshBatch() {
+        Instant staleBefore = Instant.now().minus(maxAge);
+        stale.set(repository.countUserScoreStale(staleBefore));
+
+        var movies = repository.findUserScoreStale(staleBefore, PageRequest.of(0, batchSize));
+        if (movies.isEmpty()) {
+            return;
+        }
+
+        log.debug("Refreshing user score of {} movies", movies.size());
+        fanOut.<Movie, Double>fetchAll(movies,
+                movie -> tmdb.getMovies().getDetails(movie.getMovieId(), "en", null).getVoteAverage())
+                .forEach(outcome -> {
+                    Movie movie = outcome.item();
+                    if (outcome.succeeded()) {
+                        refreshed.increment();
+                        repository.updateUserScore(movie.getId(), outcome.result(), Instant.now());
+                        return;
+                    }
+                    // Keep the previous score, the movie is stale again after retry-after instead of max-age
+                    log.warn("Error fetching score for movie {}: {}", movie.getMovieId(),
+                            outcome.error().getMessage());
+                    failed.increment();
+                    repository.updateUserScore(movie.getId(), null, Instant.now().minus(maxAge).plus(retryAfter));
+                });
+    }
+}
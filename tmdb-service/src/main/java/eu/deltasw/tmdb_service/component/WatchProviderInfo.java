@@ -1,37 +1,119 @@
 package eu.deltasw.tmdb_service.component;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import eu.deltasw.common.events.model.EventType;
 import eu.deltasw.common.events.model.MovieEvent;
 import eu.deltasw.common.model.WatchInfo;
-import eu.deltasw.common.service.MovieEventProducer;
+import eu.deltasw.common.outbox.MovieEventOutbox;
+import eu.deltasw.tmdb_service.model.ProviderIds;
+import eu.deltasw.tmdb_service.model.RefreshCheckpoint;
+import eu.deltasw.tmdb_service.model.WatchProviderState;
 import eu.deltasw.tmdb_service.repository.MovieRepository;
+import eu.deltasw.tmdb_service.repository.RefreshCheckpointRepository;
+import eu.deltasw.tmdb_service.service.ProviderDictionary;
+import eu.deltasw.tmdb_service.service.TmdbFanOut;
+import eu.deltasw.tmdb_service.service.WatchProvidersFingerprint;
 import eu.deltasw.tmdb_service.service.WatchProvidersMapperService;
 import info.movito.themoviedbapi.TmdbApi;
-import info.movito.themoviedbapi.tools.TmdbException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 @Component
 @Slf4j
 public class WatchProviderInfo {
+    private static final String JOB = "watch-providers";
+
     private final MovieRepository repository;
+    private final RefreshCheckpointRepository checkpoints;
     private final TmdbApi tmdb;
-    private final MovieEventProducer movieEventProducer;
+    private final TmdbFanOut fanOut;
+    private final MovieEventOutbox outbox;
     private final WatchProvidersMapperService watchProvidersMapperService;
+    private final ProviderDictionary providerDictionary;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final int pageSize;
+    private final Duration pageDeadline;
+    private final Duration lease;
+    private final String owner = UUID.randomUUID().toString();
+    private final Progress progress = new Progress();
+    private volatile boolean stopping;
+    private final Counter failed;
+    private final Counter unchanged;
+    private final Counter updated;
+    private final Counter updateEvents;
 
     @Value("${watchproviders.update.cron}")
     private String updateCron;
 
-    public WatchProviderInfo(MovieRepository repository, @Value("${tmdb.key}") String tmdbKey,
-            MovieEventProducer movieEventProducer, WatchProvidersMapperService watchProvidersMapperService) {
+    // Movies up to lastId are done, the ones after it missed the deadline and are fetched again
+    private record PageResult(int updated, int done, long lastId) {
+    }
+
+    private static class Progress {
+        volatile long total;
+        volatile long processed;
+        volatile double throughput;
+        volatile double eta;
+    }
+
+    public WatchProviderInfo(MovieRepository repository, RefreshCheckpointRepository checkpoints, TmdbApi tmdb,
+            TmdbFanOut fanOut, MovieEventOutbox outbox,
+            WatchProvidersMapperService watchProvidersMapperService, ProviderDictionary providerDictionary,
+            TransactionTemplate transactionTemplate,
+            TaskScheduler taskScheduler,
+            @Value("${watchproviders.update.page-size}") int pageSize,
+            @Value("${watchproviders.update.tmdb-rate}") double tmdbRate,
+            @Value("${tmdb.fan-out.deadline}") Duration callDeadline,
+            @Value("${watchproviders.update.lease}") Duration lease,
+            MeterRegistry meterRegistry) {
         this.repository = repository;
-        this.tmdb = new TmdbApi(tmdbKey);
-        this.movieEventProducer = movieEventProducer;
+        this.checkpoints = checkpoints;
+        this.tmdb = tmdb;
+        this.fanOut = fanOut;
+        this.outbox = outbox;
         this.watchProvidersMapperService = watchProvidersMapperService;
+        this.providerDictionary = providerDictionary;
+        this.transactionTemplate = transactionTemplate;
+        this.taskScheduler = taskScheduler;
+        this.pageSize = pageSize;
+        // A page needs pageSize / tmdbRate seconds at the TMDb rate limit, the call deadline
+        // leaves room for the slowest call of the page
+        this.pageDeadline = Duration.ofMillis((long) Math.ceil(pageSize * 1000 / tmdbRate)).plus(callDeadline);
+        this.lease = lease;
+        this.failed = meterRegistry.counter("watchproviders.refresh.failed");
+        this.unchanged = meterRegistry.counter("watchproviders.refresh.unchanged");
+        this.updated = meterRegistry.counter("watchproviders.refresh.updated");
+        this.updateEvents = meterRegistry.counter("watchproviders.refresh.events");
+        Gauge.builder("watchproviders.refresh.total", progress, p -> p.total).register(meterRegistry);
+        Gauge.builder("watchproviders.refresh.processed", progress, p -> p.processed).register(meterRegistry);
+        Gauge.builder("watchproviders.refresh.throughput", progress, p -> p.throughput)
+                .baseUnit("movies/s").register(meterRegistry);
+        Gauge.builder("watchproviders.refresh.eta", progress, p -> p.eta)
+                .baseUnit("seconds").register(meterRegistry);
     }
 
     @PostConstruct
@@ -41,30 +123,196 @@ public class WatchProviderInfo {
 
     @Scheduled(cron = "${watchproviders.update.cron}")
     public void updateWatchProvidersInfo() {
-        log.info("Updating watch providers info...");
-
-        repository.findAll().forEach(movie -> {
-            try {
-                // Check if watch providers have changed
-                WatchInfo existingProviders = movie.getWatchProviders();
-                WatchInfo newProviders = watchProvidersMapperService.convertTo(
-                        tmdb.getMovies().getWatchProviders(movie.getMovieId())
-                                .getResults().get("GR"));
-                if (existingProviders != null && !existingProviders.equals(newProviders)) {
-                    MovieEvent event = new MovieEvent(EventType.WATCH_INFO_UPDATED, null, movie.getMovieId(), null);
-                    movieEventProducer.sendMovieEvent(event);
-                    movie.setWatchProviders(newProviders);
-                    repository.save(movie);
+        refresh(false);
+    }
+
+    // A run interrupted by a shutdown is picked up again without waiting for the next cron trigger
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedRun() {
+        taskScheduler.schedule(this::resume, Instant.now());
+    }
+
+    // The lease of an instance that stopped without releasing it is waited out, and the
+    // resume is tried again when it expires instead of being dropped until the next cron trigger
+    void resume() {
+        if (refresh(true)) {
+            return;
+        }
+        checkpoints.findById(JOB)
+                .filter(checkpoint -> checkpoint.getLastId() != null && checkpoint.getLeaseUntil() != null)
+                .map(RefreshCheckpoint::getLeaseUntil)
+                .ifPresent(leaseUntil -> {
+                    log.info("Watch providers refresh is leased until {}, resuming afterwards", leaseUntil);
+                    taskScheduler.schedule(this::resume, leaseUntil.plusSeconds(1));
+                });
+    }
+
+    // Hands the run over to the other instances on a graceful shutdown
+    @PreDestroy
+    public void releaseLease() {
+        stopping = true;
+        if (checkpoints.release(JOB, owner) > 0) {
+            log.info("Released the watch providers refresh lease");
+        }
+    }
+
+    private boolean refresh(boolean resumeOnly) {
+        Instant now = Instant.now();
+        if (stopping || checkpoints.claim(JOB, owner, now, now.plus(lease), resumeOnly) == 0) {
+            if (!resumeOnly) {
+                log.info("Watch providers refresh is already running");
+            }
+            return false;
+        }
+
+        RefreshCheckpoint checkpoint = checkpoints.findById(JOB).orElseThrow();
+        long lastId = checkpoint.getLastId();
+        long processed = checkpoint.getProcessed();
+        if (lastId > 0) {
+            log.info("Resuming watch providers refresh after movie {} ({} done)", lastId, processed);
+        } else {
+            log.info("Updating watch providers info...");
+        }
+
+        progress.total = repository.count();
+        long runStart = System.nanoTime();
+        long processedInRun = 0;
+        long updated = 0;
+        while (!stopping) {
+            var page = repository.findPageAfter(lastId, PageRequest.of(0, pageSize));
+            if (page.isEmpty()) {
+                break;
+            }
+
+            PageResult result = refreshPage(page);
+            updated += result.updated();
+            if (result.done() == 0) {
+                log.warn("Watch provider fetches timed out from movie {} on, the next run resumes there",
+                        page.getFirst().getId());
+                checkpoints.release(JOB, owner);
+                return true;
+            }
+            lastId = result.lastId();
+            processed += result.done();
+            processedInRun += result.done();
+            updateProgress(processed, processedInRun, runStart);
+
+            if (checkpoints.advance(JOB, owner, lastId, processed, Instant.now().plus(lease)) == 0) {
+                log.warn("Lost the watch providers refresh lease after movie {}, stopping", lastId);
+                return true;
+            }
+        }
+        if (stopping) {
+            log.info("Watch providers refresh stopped after movie {}, another instance resumes it", lastId);
+            return true;
+        }
+
+        checkpoints.complete(JOB, owner);
+        int dropped = providerDictionary.dropLegacyProviders();
+        if (dropped > 0) {
+            log.info("Dropped {} migrated watch providers no movie refers to", dropped);
+        }
+        progress.eta = 0;
+        log.info("Watch providers refresh finished, {} movies checked, {} updated", processed, updated);
+        return true;
+    }
+
+    private PageResult refreshPage(List<WatchProviderState> page) {
+        Map<Long, Map<String, ProviderIds>> changed = new HashMap<>();
+        List<Long> fetched = new ArrayList<>();
+        long[] firstTimedOut = { Long.MAX_VALUE };
+        fanOut.<WatchProviderState, Map<String, ProviderIds>>fetchAll(page,
+                movie -> watchProvidersMapperService.convertTo(
+                        tmdb.getMovies().getWatchProviders(movie.getMovieId()).getResults()),
+                pageDeadline)
+                .forEach(outcome -> {
+                    WatchProviderState movie = outcome.item();
+                    if (outcome.error() instanceof TimeoutException) {
+                        firstTimedOut[0] = Math.min(firstTimedOut[0], movie.getId());
+                        return;
+                    }
+                    if (!outcome.succeeded()) {
+                        log.warn("Error getting watch providers for movie {}: {}", movie.getMovieId(),
+                                outcome.error().getMessage());
+                        failed.increment();
+                        return;
+                    }
+                    fetched.add(movie.getId());
+                    // Same fingerprint means same providers, the row is skipped without reading its JSON
+                    Long fingerprint = movie.getWatchProvidersFingerprint();
+                    if (fingerprint != null && fingerprint == WatchProvidersFingerprint.of(outcome.result())) {
+                        unchanged.increment();
+                        return;
+                    }
+                    changed.put(movie.getId(), outcome.result());
+                });
+
+        // The checkpoint stops before the first movie that missed the deadline, so it is not skipped
+        List<WatchProviderState> done = page.stream().filter(movie -> movie.getId() < firstTimedOut[0]).toList();
+        long lastId = done.isEmpty() ? 0 : done.getLast().getId();
+        if (firstTimedOut[0] != Long.MAX_VALUE) {
+            log.warn("Watch provider fetches missed the {} deadline from movie {} on, fetching them again",
+                    pageDeadline, firstTimedOut[0]);
+        }
+
+        if (changed.isEmpty()) {
+            stampFetched(fetched, Instant.now());
+            return new PageResult(0, done.size(), lastId);
+        }
+
+        // Changed rows are written in one transaction as JDBC batch updates. Rows without a fingerprint
+        // yet are compared per region with the stored providers, only real changes produce events.
+        // Events go to the outbox in the same transaction, so a row is never stored without them.
+        List<MovieEvent> events = new ArrayList<>();
+        int[] updatedRows = new int[1];
+        Instant now = Instant.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            repository.findAllById(changed.keySet()).forEach(movie -> {
+                Map<String, WatchInfo> current = providerDictionary.resolve(changed.get(movie.getId()));
+                Map<String, WatchInfo> existing = movie.getWatchProviderIds() != null
+                        ? providerDictionary.resolve(movie.getWatchProviderIds()) : Map.of();
+                Set<String> regions = new HashSet<>(existing.keySet());
+                if (current != null) {
+                    regions.addAll(current.keySet());
                 }
-                if (existingProviders == null && newProviders != null) {
-                    MovieEvent event = new MovieEvent(EventType.WATCH_INFO_UPDATED, null, movie.getMovieId(), null);
-                    movieEventProducer.sendMovieEvent(event);
-                    movie.setWatchProviders(newProviders);
-                    repository.save(movie);
+                for (String region : regions) {
+                    if (WatchProvidersFingerprint.of(existing.get(region)) != WatchProvidersFingerprint
+                            .of(current != null ? current.get(region) : null)) {
+                        events.add(new MovieEvent(EventType.WATCH_INFO_UPDATED, null, movie.getMovieId(),
+                                null, region));
+                    }
                 }
-            } catch (TmdbException e) {
-                log.error("Error getting watch providers", e);
-            }
+
+                // Rows migrated with negative provider ids are rewritten with the TMDb ids, without events
+                long fingerprint = WatchProvidersFingerprint.of(changed.get(movie.getId()));
+                if (WatchProvidersFingerprint.of(movie.getWatchProviderIds()) != fingerprint) {
+                    movie.setWatchProviderIds(changed.get(movie.getId()));
+                    updatedRows[0]++;
+                }
+                movie.setWatchProvidersFingerprint(fingerprint);
+            });
+            outbox.enqueueAll(events);
+            stampFetched(fetched, now);
         });
+        updated.increment(updatedRows[0]);
+        unchanged.increment(changed.size() - updatedRows[0]);
+        updateEvents.increment(events.size());
+        return new PageResult(updatedRows[0], done.size(), lastId);
+    }
+
+    // Every fetched row is marked as checked, unchanged ones too, so the consumer skips TMDb for them
+    // within the freshness window. Changed rows are marked with their write, after it succeeded.
+    private void stampFetched(List<Long> fetched, Instant now) {
+        if (!fetched.isEmpty()) {
+            repository.stampWatchProvidersFetched(fetched, now);
+        }
+    }
+
+    private void updateProgress(long processed, long processedInRun, long runStart) {
+        double elapsedSeconds = Math.max((System.nanoTime() - runStart) / 1e9, 0.001);
+        double throughput = processedInRun / elapsedSeconds;
+        progress.processed = processed;
+        progress.throughput = throughput;
+        progress.eta = Math.max(progress.total - processed, 0) / Math.max(throughput, 0.001);
     }
 }
@@ -0,0 +1,24 @@
+package eu.deltasw.tmdb_service.config;
+
+import info.movito.themoviedbapi.tools.RequestType;
+import info.movito.themoviedbapi.tools.TmdbResponseException;
+import info.movito.themoviedbapi.tools.TmdbUrlReader;
+
+// Sends the TMDb API calls to another base URL, like the tmdb-simulator
+public class BaseUrlTmdbUrlReader implements TmdbUrlReader {
+    private static final String TMDB_BASE_URL = "https://api.themoviedb.org/3";
+
+    private final TmdbUrlReader delegate;
+    private final String baseUrl;
+
+    public BaseUrlTmdbUrlReader(TmdbUrlReader delegate, String baseUrl) {
+        this.delegate = delegate;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public String readUrl(String url, String jsonBody, RequestType requestType) throws TmdbResponseException {
+        String target = url.startsWith(TMDB_BASE_URL) ? baseUrl + url.substring(TMDB_BASE_URL.length()) : url;
+        return delegate.readUrl(target, jsonBody, requestType);
+    }
+}
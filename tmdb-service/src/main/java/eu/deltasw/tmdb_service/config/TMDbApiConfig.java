@@ -5,11 +5,18 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import info.movito.themoviedbapi.TmdbApi;
+import info.movito.themoviedbapi.tools.TmdbHttpClient;
+import lombok.extern.slf4j.Slf4j;
 
 @Configuration
+@Slf4j
 public class TMDbApiConfig {
     @Bean
-    TmdbApi tmdbApi(@Value("${tmdb.key}") String tmdbKey) {
-        return new TmdbApi(tmdbKey);
+    TmdbApi tmdbApi(@Value("${tmdb.key}") String tmdbKey, @Value("${tmdb.base-url:}") String baseUrl) {
+        if (baseUrl.isBlank()) {
+            return new TmdbApi(tmdbKey);
+        }
+        log.info("Sending TMDb API calls to {}", baseUrl);
+        return new TmdbApi(new BaseUrlTmdbUrlReader(new TmdbHttpClient(tmdbKey), baseUrl));
     }
 }
@@ -2,13 +2,17 @@ package eu.deltasw.tmdb_service.controller;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import eu.deltasw.common.model.dto.WatchInfoRequest;
@@ -16,11 +20,11 @@ import eu.deltasw.common.model.dto.WatchInfoResponse;
 import eu.deltasw.tmdb_service.model.dto.ErrorResponse;
 import eu.deltasw.tmdb_service.model.dto.SearchMovieRequest;
 import eu.deltasw.tmdb_service.repository.MovieRepository;
-import eu.deltasw.tmdb_service.service.WatchProvidersMapperService;
-import info.movito.themoviedbapi.TmdbApi;
+import eu.deltasw.tmdb_service.service.PopularMoviesSnapshot;
+import eu.deltasw.tmdb_service.service.ProviderDictionary;
+import eu.deltasw.tmdb_service.service.TitleIndex;
+import eu.deltasw.tmdb_service.service.TmdbResponseCache;
 import info.movito.themoviedbapi.tools.TmdbException;
-import info.movito.themoviedbapi.tools.builders.discover.DiscoverMovieParamBuilder;
-import info.movito.themoviedbapi.tools.sortby.DiscoverMovieSortBy;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 
@@ -29,36 +33,46 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class TMDbController {
 
-    private final TmdbApi tmdb;
+    private static final String POSTER_URL = "https://image.tmdb.org/t/p/w92";
+
+    private final TmdbResponseCache tmdbCache;
+    private final TitleIndex titleIndex;
     private final MovieRepository repository;
-    private final WatchProvidersMapperService watchProvidersMapperService;
+    private final ProviderDictionary providerDictionary;
+    private final PopularMoviesSnapshot popularMovies;
 
-    public TMDbController(TmdbApi tmdb, MovieRepository repository,
-            WatchProvidersMapperService watchProvidersMapperService) {
-        this.tmdb = tmdb;
+    public TMDbController(TmdbResponseCache tmdbCache, TitleIndex titleIndex, MovieRepository repository,
+            ProviderDictionary providerDictionary, PopularMoviesSnapshot popularMovies) {
+        this.tmdbCache = tmdbCache;
+        this.titleIndex = titleIndex;
         this.repository = repository;
-        this.watchProvidersMapperService = watchProvidersMapperService;
+        this.providerDictionary = providerDictionary;
+        this.popularMovies = popularMovies;
     }
 
     @GetMapping("/popular")
-    public ResponseEntity<?> getPopularMovies() {
-        DiscoverMovieParamBuilder discoverMovieParamBuilder = new DiscoverMovieParamBuilder();
-        discoverMovieParamBuilder.page(1);
-        discoverMovieParamBuilder.sortBy(DiscoverMovieSortBy.POPULARITY_DESC);
-        discoverMovieParamBuilder.region("GR");
-
-        try {
-            return ResponseEntity.ok(tmdb.getDiscover().getMovie(discoverMovieParamBuilder));
-        } catch (TmdbException e) {
-            log.warn("Cannot communicate with TMDb API {}", e.getMessage());
-            return ResponseEntity.badRequest().body(new ErrorResponse("Cannot communicate with TMDb API"));
+    public ResponseEntity<?> getPopularMovies(@RequestParam(value = "page", defaultValue = "1") int page,
+            @RequestParam(value = "region", defaultValue = "GR") String region) {
+        String regionCode = region.toUpperCase(Locale.ROOT);
+        if (!popularMovies.supports(regionCode)) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("region is not supported"));
         }
+        if (page < 1 || page > popularMovies.getPages()) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse("page must be between 1 and " + popularMovies.getPages()));
+        }
+
+        // Served from the background refreshed snapshot, TMDb is never called here
+        return popularMovies.page(regionCode, page)
+                .<ResponseEntity<?>>map(json -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body(new ErrorResponse("Popular movies are not available yet")));
     }
 
     @PostMapping("/search")
     public ResponseEntity<?> search(@Valid @RequestBody SearchMovieRequest term) {
         try {
-            return ResponseEntity.ok(tmdb.getSearch().searchMovie(term.getTerm(), false, null, null, null, null, null));
+            return ResponseEntity.ok(tmdbCache.searchMovies(term.getTerm()));
         } catch (TmdbException e) {
             log.warn("Cannot communicate with TMDb API {}", e.getMessage());
             return ResponseEntity.badRequest().body(new ErrorResponse("Cannot communicate with TMDb API"));
@@ -67,14 +81,25 @@ public class TMDbController {
 
     @PostMapping("/autocomplete")
     public ResponseEntity<?> autocomplete(@Valid @RequestBody SearchMovieRequest term) {
+        // Served from the local index when it knows enough titles for the prefix
+        var local = titleIndex.lookup(term.getTerm());
+        if (local.isPresent()) {
+            return ResponseEntity.ok(local.get().stream()
+                    .map(movie -> Arrays.asList(
+                            movie.title(),
+                            movie.releaseDate(),
+                            movie.posterPath() != null ? POSTER_URL + movie.posterPath() : null))
+                    .collect(Collectors.toList()));
+        }
+
         try {
-            var results = tmdb.getSearch().searchMovie(term.getTerm(), false, null, null, null, null, null);
+            var results = tmdbCache.searchMovies(term.getTerm());
             var response = results.getResults().stream()
                     .map(movie -> Arrays.asList(
                             movie.getTitle(),
                             movie.getReleaseDate(),
                             movie.getPosterPath() != null
-                                    ? "https://image.tmdb.org/t/p/w92" + movie.getPosterPath()
+                                    ? POSTER_URL + movie.getPosterPath()
                                     : null))
                     .collect(Collectors.toList());
             return ResponseEntity.ok(response);
@@ -85,7 +110,8 @@ public class TMDbController {
     }
 
     @PostMapping("/watch-info")
-    public ResponseEntity<?> watchInfo(@Valid @RequestBody WatchInfoRequest movies) {
+    public ResponseEntity<?> watchInfo(@Valid @RequestBody WatchInfoRequest movies,
+            @RequestParam(value = "region", defaultValue = "GR") String region) {
         try {
             var movieIds = movies.getMovies();
 
@@ -93,20 +119,14 @@ public class TMDbController {
                 return ResponseEntity.badRequest().body(new ErrorResponse("movies is required"));
             }
 
+            // User scores are kept fresh by UserScoreRefresher, so no TMDb calls are needed here
+            String regionCode = region.toUpperCase(Locale.ROOT);
             var results = repository.findByMovieIdIn(movieIds);
             List<WatchInfoResponse> watchInfoResponse = results.stream()
-                    .map(movie -> {
-                        Double userScore = null;
-                        try {
-                            // Get user score from TMDb API
-                            var movieInfo = tmdb.getMovies().getDetails(movie.getMovieId(), "en", null);
-                            // Return a map with movie ID and vote average
-                            userScore = movieInfo.getVoteAverage();
-                        } catch (TmdbException e) {
-                            log.warn("Error fetching score for movie {}: {}", movie.getMovieId(), e.getMessage());
-                        }
-                        return new WatchInfoResponse(movie.getMovieId(), userScore, movie.getWatchProviders());
-                    })
+                    .map(movie -> new WatchInfoResponse(movie.getMovieId(), movie.getUserScore(),
+                            movie.getWatchProviderIds() != null
+                                    ? providerDictionary.resolve(movie.getWatchProviderIds().get(regionCode))
+                                    : null))
                     .collect(Collectors.toList());
             return ResponseEntity.ok(watchInfoResponse);
         } catch (Exception e) {
@@ -1,20 +1,25 @@
 package eu.deltasw.tmdb_service.model;
 
+import java.time.Instant;
+import java.util.Map;
+
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Type;
 
-import eu.deltasw.common.model.WatchInfo;
 import io.hypersistence.utils.hibernate.type.json.JsonType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,11 +27,20 @@ import lombok.NoArgsConstructor;
 public class Movie {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movie_id_seq")
+    @SequenceGenerator(name = "movie_id_seq", sequenceName = "movie_id_seq", allocationSize = 50)
     private Long id;
 
     private Integer movieId;
+    // Watch provider ids by region code, regions without providers are left out.
+    // The providers themselves are in the watch_provider table, see ProviderDictionary
     @Type(JsonType.class)
     @Column(columnDefinition = "jsonb")
-    private WatchInfo watchProviders;
+    private Map<String, ProviderIds> watchProviderIds;
+    // Order insensitive fingerprint of the provider ids, see WatchProvidersFingerprint
+    private Long watchProvidersFingerprint;
+    private Instant watchProvidersUpdatedAt;
+
+    private Double userScore;
+    private Instant userScoreUpdatedAt;
 }
@@ -0,0 +1,22 @@
+package eu.deltasw.tmdb_service.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "processed_movie_event")
+@Data
+@NoArgsConstructor
+public class ProcessedMovieEvent {
+
+    // Value of the movie-event-id header set by the movie-service outbox relay
+    @Id
+    private String eventId;
+
+    private Instant processedAt;
+}
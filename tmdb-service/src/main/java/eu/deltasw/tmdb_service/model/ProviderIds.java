@@ -0,0 +1,14 @@
+package eu.deltasw.tmdb_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Watch providers of one region as ids of the watch_provider dictionary, in TMDb order
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProviderIds {
+    private int[] rent;
+    private int[] flatrate;
+}
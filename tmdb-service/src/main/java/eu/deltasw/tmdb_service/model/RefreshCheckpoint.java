@@ -0,0 +1,25 @@
+package eu.deltasw.tmdb_service.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "refresh_checkpoint")
+@Data
+@NoArgsConstructor
+public class RefreshCheckpoint {
+
+    @Id
+    private String job;
+
+    private Long lastId;
+    private long processed;
+    private Instant startedAt;
+    private String owner;
+    private Instant leaseUntil;
+}
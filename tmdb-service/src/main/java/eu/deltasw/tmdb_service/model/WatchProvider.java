@@ -0,0 +1,21 @@
+package eu.deltasw.tmdb_service.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "watch_provider")
+@Data
+@NoArgsConstructor
+public class WatchProvider {
+
+    // TMDb provider id
+    @Id
+    private Integer id;
+
+    private String name;
+    private String logoPath;
+}
@@ -0,0 +1,9 @@
+package eu.deltasw.tmdb_service.model;
+
+public interface WatchProviderState {
+    Long getId();
+
+    Integer getMovieId();
+
+    Long getWatchProvidersFingerprint();
+}
@@ -1,14 +1,44 @@
 package eu.deltasw.tmdb_service.repository;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import eu.deltasw.tmdb_service.model.Movie;
+import eu.deltasw.tmdb_service.model.WatchProviderState;
 
 public interface MovieRepository extends JpaRepository<Movie, Long> {
     Optional<Movie> findByMovieId(Integer movieId);
 
     List<Movie> findByMovieIdIn(List<Integer> movieIds);
+
+    // Only the fingerprint is read, the providers JSON is loaded for changed rows alone
+    @Query("SELECT m.id AS id, m.movieId AS movieId, m.watchProvidersFingerprint AS watchProvidersFingerprint FROM Movie m WHERE m.id > :afterId ORDER BY m.id")
+    List<WatchProviderState> findPageAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    // One statement per refresh page, including the rows whose providers did not change
+    @Transactional
+    @Modifying
+    @Query("UPDATE Movie m SET m.watchProvidersUpdatedAt = :fetchedAt WHERE m.id IN :ids")
+    int stampWatchProvidersFetched(@Param("ids") List<Long> ids, @Param("fetchedAt") Instant fetchedAt);
+
+    @Query("SELECT m FROM Movie m WHERE m.userScoreUpdatedAt IS NULL OR m.userScoreUpdatedAt < :staleBefore ORDER BY m.userScoreUpdatedAt ASC NULLS FIRST")
+    List<Movie> findUserScoreStale(@Param("staleBefore") Instant staleBefore, Pageable pageable);
+
+    @Query("SELECT COUNT(m) FROM Movie m WHERE m.userScoreUpdatedAt IS NULL OR m.userScoreUpdatedAt < :staleBefore")
+    long countUserScoreStale(@Param("staleBefore") Instant staleBefore);
+
+    // Only touches the score columns, so it cannot overwrite concurrent watch provider updates
+    @Transactional
+    @Modifying
+    @Query("UPDATE Movie m SET m.userScore = COALESCE(:userScore, m.userScore), m.userScoreUpdatedAt = :updatedAt WHERE m.id = :id")
+    int updateUserScore(@Param("id") Long id, @Param("userScore") Double userScore,
+            @Param("updatedAt") Instant updatedAt);
 }
@@ -0,0 +1,31 @@
+package eu.deltasw.tmdb_service.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.deltasw.tmdb_service.model.ProcessedMovieEvent;
+
+public interface ProcessedMovieEventRepository extends JpaRepository<ProcessedMovieEvent, String> {
+    @Query("SELECT e.eventId FROM ProcessedMovieEvent e WHERE e.eventId IN :eventIds")
+    List<String> findProcessed(@Param("eventIds") Collection<String> eventIds);
+
+    // Event ids are outbox row ids, so joining them with commas is safe
+    @Modifying
+    @Query(value = """
+            INSERT INTO processed_movie_event (event_id, processed_at)
+            SELECT event_id, :processedAt FROM unnest(string_to_array(:eventIds, ',')) event_id
+            ON CONFLICT (event_id) DO NOTHING""", nativeQuery = true)
+    int markProcessed(@Param("eventIds") String eventIds, @Param("processedAt") Instant processedAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ProcessedMovieEvent e WHERE e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") Instant before);
+}
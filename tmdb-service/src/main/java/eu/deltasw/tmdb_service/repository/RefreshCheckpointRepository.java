@@ -0,0 +1,49 @@
+package eu.deltasw.tmdb_service.repository;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.deltasw.tmdb_service.model.RefreshCheckpoint;
+
+public interface RefreshCheckpointRepository extends JpaRepository<RefreshCheckpoint, String> {
+    // Takes the lease if nobody holds it, a run in progress is continued, otherwise a new one starts
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE refresh_checkpoint SET owner = :owner, lease_until = :leaseUntil,
+                started_at = CASE WHEN last_id IS NULL THEN :now ELSE started_at END,
+                processed = CASE WHEN last_id IS NULL THEN 0 ELSE processed END,
+                last_id = COALESCE(last_id, 0)
+            WHERE job = :job AND (lease_until IS NULL OR lease_until < :now)
+                AND (:resumeOnly = FALSE OR last_id IS NOT NULL)""", nativeQuery = true)
+    int claim(@Param("job") String job, @Param("owner") String owner, @Param("now") Instant now,
+            @Param("leaseUntil") Instant leaseUntil, @Param("resumeOnly") boolean resumeOnly);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE refresh_checkpoint SET last_id = :lastId, processed = :processed, lease_until = :leaseUntil
+            WHERE job = :job AND owner = :owner""", nativeQuery = true)
+    int advance(@Param("job") String job, @Param("owner") String owner, @Param("lastId") long lastId,
+            @Param("processed") long processed, @Param("leaseUntil") Instant leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE refresh_checkpoint SET last_id = NULL, owner = NULL, lease_until = NULL
+            WHERE job = :job AND owner = :owner""", nativeQuery = true)
+    int complete(@Param("job") String job, @Param("owner") String owner);
+
+    // Keeps the progress, so another instance can resume the run right away
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE refresh_checkpoint SET owner = NULL, lease_until = NULL
+            WHERE job = :job AND owner = :owner""", nativeQuery = true)
+    int release(@Param("job") String job, @Param("owner") String owner);
+}
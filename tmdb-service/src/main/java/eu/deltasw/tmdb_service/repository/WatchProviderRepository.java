@@ -0,0 +1,26 @@
+package eu.deltasw.tmdb_service.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.deltasw.tmdb_service.model.WatchProvider;
+
+public interface WatchProviderRepository extends JpaRepository<WatchProvider, Integer> {
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO watch_provider (id, name, logo_path) VALUES (:id, :name, :logoPath)
+            ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, logo_path = EXCLUDED.logo_path""",
+            nativeQuery = true)
+    void upsert(@Param("id") int id, @Param("name") String name, @Param("logoPath") String logoPath);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+            DELETE FROM watch_provider WHERE id < 0 AND NOT EXISTS (
+                SELECT 1 FROM movie WHERE watch_provider_ids @@ '$.*.*[*] < 0')""", nativeQuery = true)
+    int deleteUnreferencedLegacy();
+}
@@ -0,0 +1,129 @@
+package eu.deltasw.tmdb_service.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import info.movito.themoviedbapi.TmdbApi;
+import info.movito.themoviedbapi.model.core.MovieResultsPage;
+import info.movito.themoviedbapi.tools.builders.discover.DiscoverMovieParamBuilder;
+import info.movito.themoviedbapi.tools.sortby.DiscoverMovieSortBy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+// The first pages of popular movies per region, refreshed in the background and kept as
+// serialized JSON. Requests are answered from memory only, a failed refresh keeps the last good pages.
+@Service
+@Slf4j
+public class PopularMoviesSnapshot {
+    private final TmdbApi tmdb;
+    private final TmdbFanOut fanOut;
+    private final TitleIndex titleIndex;
+    private final ObjectMapper objectMapper;
+    private final List<String> regions;
+    private final int pages;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Counter refreshed;
+    private final Counter failed;
+
+    private record Snapshot(List<byte[]> pages, Instant refreshedAt) {
+    }
+
+    public PopularMoviesSnapshot(TmdbApi tmdb, TmdbFanOut fanOut, TitleIndex titleIndex, ObjectMapper objectMapper,
+            @Value("${tmdb.popular.regions}") List<String> regions,
+            @Value("${tmdb.popular.pages}") int pages,
+            MeterRegistry meterRegistry) {
+        this.tmdb = tmdb;
+        this.fanOut = fanOut;
+        this.titleIndex = titleIndex;
+        this.objectMapper = objectMapper;
+        this.regions = regions.stream().map(region -> region.toUpperCase(Locale.ROOT)).toList();
+        this.pages = pages;
+        this.refreshed = meterRegistry.counter("tmdb.popular.refresh", "result", "success");
+        this.failed = meterRegistry.counter("tmdb.popular.refresh", "result", "failure");
+        Gauge.builder("tmdb.popular.age", snapshots, this::oldestAge).baseUnit("seconds").register(meterRegistry);
+    }
+
+    public boolean supports(String region) {
+        return regions.contains(region);
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    // Empty until the first refresh of the region has succeeded
+    public Optional<byte[]> page(String region, int page) {
+        Snapshot snapshot = snapshots.get(region);
+        if (snapshot == null || page < 1 || page > snapshot.pages().size()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(snapshot.pages().get(page - 1));
+    }
+
+    @Scheduled(fixedDelayString = "${tmdb.popular.refresh-interval}")
+    public void refresh() {
+        regions.forEach(this::refresh);
+    }
+
+    private void refresh(String region) {
+        Snapshot previous = snapshots.get(region);
+        List<byte[]> fetched = new ArrayList<>(Collections.nCopies(pages, null));
+        int failures = 0;
+        for (var outcome : fanOut.<Integer, byte[]>fetchAll(IntStream.rangeClosed(1, pages).boxed().toList(),
+                page -> fetch(region, page))) {
+            if (outcome.succeeded()) {
+                fetched.set(outcome.item() - 1, outcome.result());
+            } else {
+                failures++;
+                log.warn("Error getting popular movies page {} for {}: {}", outcome.item(), region,
+                        outcome.error().getMessage());
+                // The page from the last good refresh is served until the next one
+                if (previous != null) {
+                    fetched.set(outcome.item() - 1, previous.pages().get(outcome.item() - 1));
+                }
+            }
+        }
+
+        if (failures == pages) {
+            failed.increment();
+            return;
+        }
+        snapshots.put(region, new Snapshot(Collections.unmodifiableList(fetched), Instant.now()));
+        refreshed.increment();
+        log.debug("Refreshed {} popular movies pages for {}", pages - failures, region);
+    }
+
+    private byte[] fetch(String region, int page) throws Exception {
+        DiscoverMovieParamBuilder discoverMovieParamBuilder = new DiscoverMovieParamBuilder();
+        discoverMovieParamBuilder.page(page);
+        discoverMovieParamBuilder.sortBy(DiscoverMovieSortBy.POPULARITY_DESC);
+        discoverMovieParamBuilder.region(region);
+        MovieResultsPage results = tmdb.getDiscover().getMovie(discoverMovieParamBuilder);
+        // Popular titles feed the autocomplete index
+        titleIndex.addAll(results.getResults());
+        return objectMapper.writeValueAsBytes(results);
+    }
+
+    private double oldestAge(Map<String, Snapshot> snapshots) {
+        return snapshots.values().stream()
+                .mapToDouble(snapshot -> Duration.between(snapshot.refreshedAt(), Instant.now()).toSeconds())
+                .max()
+                .orElse(0);
+    }
+}
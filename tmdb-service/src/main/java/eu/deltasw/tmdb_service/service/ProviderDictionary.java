@@ -0,0 +1,119 @@
+package eu.deltasw.tmdb_service.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import eu.deltasw.common.model.ProviderInfo;
+import eu.deltasw.common.model.WatchInfo;
+import eu.deltasw.tmdb_service.model.ProviderIds;
+import eu.deltasw.tmdb_service.model.WatchProvider;
+import eu.deltasw.tmdb_service.repository.WatchProviderRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+// In memory copy of the watch_provider table. There are only a few dozen providers, so every
+// WatchInfo built here shares the same ProviderInfo instances, which must not be modified.
+@Service
+@Slf4j
+public class ProviderDictionary {
+    private final WatchProviderRepository repository;
+    private final Map<Integer, ProviderInfo> providers = new ConcurrentHashMap<>();
+
+    public ProviderDictionary(WatchProviderRepository repository) {
+        this.repository = repository;
+    }
+
+    // Picks up providers registered or renamed by other instances
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${watchproviders.dictionary.reload-interval}")
+    public void reload() {
+        repository.findAll().forEach(this::put);
+        log.debug("Loaded {} watch providers", providers.size());
+    }
+
+    // Stores a provider seen in a TMDb response if it is new or its name or logo changed
+    public int register(int id, String name, String logoPath) {
+        ProviderInfo known = providers.get(id);
+        if (known == null || !Objects.equals(known.getProviderName(), name)
+                || !Objects.equals(known.getLogoPath(), logoPath)) {
+            repository.upsert(id, name, logoPath);
+            providers.put(id, providerInfo(name, logoPath));
+        }
+        return id;
+    }
+
+    // Providers migrated without a TMDb id have negative ids, they go once the refresh replaced
+    // them in every movie. Other instances drop them from memory on their next start.
+    public int dropLegacyProviders() {
+        int deleted = repository.deleteUnreferencedLegacy();
+        if (deleted > 0) {
+            providers.keySet().removeIf(id -> id < 0);
+        }
+        return deleted;
+    }
+
+    public ProviderInfo resolve(int id) {
+        ProviderInfo providerInfo = providers.get(id);
+        if (providerInfo == null) {
+            providerInfo = repository.findById(id).map(this::put).orElse(null);
+        }
+        return providerInfo;
+    }
+
+    public WatchInfo resolve(ProviderIds ids) {
+        if (ids == null) {
+            return null;
+        }
+        WatchInfo watchInfo = new WatchInfo();
+        watchInfo.setRent(resolve(ids.getRent()));
+        watchInfo.setFlatrate(resolve(ids.getFlatrate()));
+        return watchInfo;
+    }
+
+    public Map<String, WatchInfo> resolve(Map<String, ProviderIds> regions) {
+        if (regions == null) {
+            return null;
+        }
+        Map<String, WatchInfo> watchInfo = new TreeMap<>();
+        regions.forEach((region, ids) -> watchInfo.put(region, resolve(ids)));
+        return watchInfo;
+    }
+
+    private List<ProviderInfo> resolve(int[] ids) {
+        if (ids == null) {
+            return null;
+        }
+        List<ProviderInfo> providerInfos = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            ProviderInfo providerInfo = resolve(id);
+            if (providerInfo != null) {
+                providerInfos.add(providerInfo);
+            }
+        }
+        return providerInfos;
+    }
+
+    private ProviderInfo put(WatchProvider provider) {
+        ProviderInfo providerInfo = providerInfo(provider.getName(), provider.getLogoPath());
+        ProviderInfo known = providers.get(provider.getId());
+        if (providerInfo.equals(known)) {
+            return known;
+        }
+        providers.put(provider.getId(), providerInfo);
+        return providerInfo;
+    }
+
+    private static ProviderInfo providerInfo(String name, String logoPath) {
+        ProviderInfo providerInfo = new ProviderInfo();
+        providerInfo.setProviderName(name);
+        providerInfo.setLogoPath(logoPath);
+        return providerInfo;
+    }
+}
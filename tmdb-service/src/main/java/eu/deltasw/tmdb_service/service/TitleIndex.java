@@ -0,0 +1,278 @@
+package eu.deltasw.tmdb_service.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import info.movito.themoviedbapi.model.core.Movie;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+// Prefix index over the titles seen in TMDb search and popular results. Every node
+// keeps its top suggestions by popularity, so a lookup is a walk down the prefix.
+// Writers are serialized, readers never lock and always see complete nodes. The size
+// of the index is bounded by an estimate of its heap usage.
+@Service
+@Slf4j
+public class TitleIndex {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Comparator<Suggestion> RANKING = Comparator.comparingDouble(Suggestion::popularity)
+            .reversed();
+    // Retained heap measured on 50k generated titles, a prefix node with its children and
+    // top arrays, and a title with its suggestion, strings and map entry
+    static final long NODE_BYTES = 112;
+    static final long TITLE_BYTES = 280;
+
+    private final Node root = new Node();
+    private final Map<Integer, Suggestion> titles = new ConcurrentHashMap<>();
+    private final int suggestions;
+    private final int minLocalHits;
+    private final int maxPrefixLength;
+    private final int maxWords;
+    private final long memoryBudget;
+    private volatile long nodes;
+    private final Counter localLookups;
+    private final Counter fallbackLookups;
+
+    public record Suggestion(int movieId, String title, String releaseDate, String posterPath, double popularity) {
+    }
+
+    private static final class Node {
+        volatile Children children = Children.EMPTY;
+        volatile Suggestion[] top = new Suggestion[0];
+    }
+
+    private record Children(char[] keys, Node[] nodes) {
+        static final Children EMPTY = new Children(new char[0], new Node[0]);
+
+        Node get(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? nodes[index] : null;
+        }
+
+        Children with(char key, Node node) {
+            int index = -(Arrays.binarySearch(keys, key) + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newNodes = new Node[nodes.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(nodes, 0, newNodes, 0, index);
+            newKeys[index] = key;
+            newNodes[index] = node;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(nodes, index, newNodes, index + 1, nodes.length - index);
+            return new Children(newKeys, newNodes);
+        }
+
+        Children without(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index < 0) {
+                return this;
+            }
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newNodes = new Node[nodes.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(nodes, 0, newNodes, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(nodes, index + 1, newNodes, index, nodes.length - index - 1);
+            return new Children(newKeys, newNodes);
+        }
+    }
+
+    public TitleIndex(@Value("${tmdb.autocomplete.suggestions}") int suggestions,
+            @Value("${tmdb.autocomplete.min-local-hits}") int minLocalHits,
+            @Value("${tmdb.autocomplete.max-prefix-length}") int maxPrefixLength,
+            @Value("${tmdb.autocomplete.max-words}") int maxWords,
+            @Value("${tmdb.autocomplete.memory-budget}") DataSize memoryBudget,
+            MeterRegistry meterRegistry) {
+        this.suggestions = suggestions;
+        this.minLocalHits = minLocalHits;
+        this.maxPrefixLength = maxPrefixLength;
+        this.maxWords = maxWords;
+        this.memoryBudget = memoryBudget.toBytes();
+        this.localLookups = meterRegistry.counter("tmdb.autocomplete.lookups", "source", "local");
+        this.fallbackLookups = meterRegistry.counter("tmdb.autocomplete.lookups", "source", "tmdb");
+        meterRegistry.gaugeMapSize("tmdb.autocomplete.titles", List.of(), titles);
+        Gauge.builder("tmdb.autocomplete.memory", this, TitleIndex::estimatedBytes)
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    // Empty when the index knows fewer titles than the threshold, the caller then asks TMDb
+    public Optional<List<Suggestion>> lookup(String term) {
+        List<Suggestion> found = suggest(term);
+        if (found.size() < minLocalHits) {
+            fallbackLookups.increment();
+            return Optional.empty();
+        }
+        localLookups.increment();
+        return Optional.of(found);
+    }
+
+    public List<Suggestion> suggest(String term) {
+        String prefix = normalize(term);
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+
+        Node node = root;
+        int depth = Math.min(prefix.length(), maxPrefixLength);
+        for (int i = 0; i < depth && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        if (node == null) {
+            return List.of();
+        }
+
+        // Nodes stop at the maximum prefix length, longer prefixes are checked on the titles
+        var top = Arrays.asList(node.top);
+        if (prefix.length() <= maxPrefixLength) {
+            return top;
+        }
+        return top.stream()
+                .filter(suggestion -> matchesWordStart(normalize(suggestion.title()), prefix))
+                .toList();
+    }
+
+    public void addAll(Collection<Movie> movies) {
+        if (movies == null) {
+            return;
+        }
+        for (Movie movie : movies) {
+            if (movie.getId() == null || movie.getTitle() == null || movie.getTitle().isBlank()) {
+                continue;
+            }
+            add(new Suggestion(movie.getId(), movie.getTitle(), movie.getReleaseDate(), movie.getPosterPath(),
+                    movie.getPopularity() != null ? movie.getPopularity() : 0));
+        }
+    }
+
+    public synchronized void add(Suggestion suggestion) {
+        Suggestion previous = titles.get(suggestion.movieId());
+        if (suggestion.equals(previous)) {
+            return;
+        }
+        // New titles are skipped once they no longer fit the budget, known titles are still updated
+        String title = normalize(suggestion.title());
+        if (previous == null && estimatedBytes() + TITLE_BYTES + newNodes(title) * NODE_BYTES > memoryBudget) {
+            return;
+        }
+        // A renamed title no longer suggests its old prefixes
+        if (previous != null && !title.equals(normalize(previous.title()))) {
+            remove(previous);
+        }
+        titles.put(suggestion.movieId(), suggestion);
+
+        for (int start : wordStarts(title)) {
+            Node node = root;
+            int end = Math.min(title.length(), start + maxPrefixLength);
+            for (int i = start; i < end; i++) {
+                char key = title.charAt(i);
+                Node child = node.children.get(key);
+                if (child == null) {
+                    child = new Node();
+                    node.children = node.children.with(key, child);
+                    nodes++;
+                }
+                child.top = rank(child.top, suggestion);
+                node = child;
+            }
+        }
+    }
+
+    // Nodes left without suggestions are pruned. Prefixes whose top list gets shorter fill up
+    // again from the TMDb fallback, as the lookup then finds fewer local hits.
+    private void remove(Suggestion suggestion) {
+        String title = normalize(suggestion.title());
+        Node[] path = new Node[maxPrefixLength + 1];
+        for (int start : wordStarts(title)) {
+            path[0] = root;
+            int end = Math.min(title.length(), start + maxPrefixLength);
+            int depth = 0;
+            for (int i = start; i < end; i++) {
+                Node child = path[depth].children.get(title.charAt(i));
+                if (child == null) {
+                    break;
+                }
+                child.top = Arrays.stream(child.top)
+                        .filter(existing -> existing.movieId() != suggestion.movieId())
+                        .toArray(Suggestion[]::new);
+                path[++depth] = child;
+            }
+            for (; depth > 0; depth--) {
+                Node node = path[depth];
+                if (node.top.length > 0 || node.children.keys().length > 0) {
+                    break;
+                }
+                path[depth - 1].children = path[depth - 1].children.without(title.charAt(start + depth - 1));
+                nodes--;
+            }
+        }
+    }
+
+    // Upper bound, words sharing a prefix within the title are counted twice
+    private long newNodes(String title) {
+        long missing = 0;
+        for (int start : wordStarts(title)) {
+            Node node = root;
+            int end = Math.min(title.length(), start + maxPrefixLength);
+            for (int i = start; i < end && node != null; i++) {
+                node = node.children.get(title.charAt(i));
+                if (node == null) {
+                    missing += end - i;
+                }
+            }
+        }
+        return missing;
+    }
+
+    // Every word start is indexed, so "matrix" also finds "The Matrix"
+    private List<Integer> wordStarts(String title) {
+        List<Integer> starts = new ArrayList<>(maxWords);
+        for (int start = 0; start < title.length() && starts.size() < maxWords; start++) {
+            if (start == 0 || title.charAt(start - 1) == ' ') {
+                starts.add(start);
+            }
+        }
+        return starts;
+    }
+
+    long estimatedBytes() {
+        return nodes * NODE_BYTES + titles.size() * TITLE_BYTES;
+    }
+
+    private Suggestion[] rank(Suggestion[] top, Suggestion suggestion) {
+        List<Suggestion> ranked = new ArrayList<>(top.length + 1);
+        for (Suggestion existing : top) {
+            if (existing.movieId() != suggestion.movieId()) {
+                ranked.add(existing);
+            }
+        }
+        ranked.add(suggestion);
+        ranked.sort(RANKING);
+        return ranked.subList(0, Math.min(ranked.size(), suggestions)).toArray(Suggestion[]::new);
+    }
+
+    private static boolean matchesWordStart(String title, String prefix) {
+        return title.startsWith(prefix) || title.contains(" " + prefix);
+    }
+
+    // Case, accents and punctuation are ignored, so "amelie" finds "Amélie"
+    static String normalize(String text) {
+        String decomposed = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(decomposed.toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+    }
+}
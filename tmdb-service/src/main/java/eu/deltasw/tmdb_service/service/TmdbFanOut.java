@@ -0,0 +1,140 @@
+package eu.deltasw.tmdb_service.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class TmdbFanOut {
+    // One virtual thread per call, the permits cap the calls in flight across all batches
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final Duration defaultDeadline;
+    private final Timer callTimer;
+    private final Counter failures;
+    private final Counter timeouts;
+
+    @FunctionalInterface
+    public interface TmdbCall<T, R> {
+        R call(T item) throws Exception;
+    }
+
+    public record Outcome<T, R>(T item, R result, Exception error) {
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    public TmdbFanOut(@Value("${tmdb.fan-out.parallelism}") int parallelism,
+            @Value("${tmdb.fan-out.deadline}") Duration defaultDeadline,
+            MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(parallelism);
+        this.defaultDeadline = defaultDeadline;
+        this.callTimer = meterRegistry.timer("tmdb.fanout.call");
+        this.failures = meterRegistry.counter("tmdb.fanout.failures");
+        this.timeouts = meterRegistry.counter("tmdb.fanout.timeouts");
+    }
+
+    public <T, R> List<Outcome<T, R>> fetchAll(Collection<T> items, TmdbCall<T, R> call) {
+        return fetchAll(items, call, defaultDeadline);
+    }
+
+    public <T, R> List<Outcome<T, R>> fetchAll(Collection<T> items, TmdbCall<T, R> call, Duration deadline) {
+        List<Outcome<T, R>> outcomes = new ArrayList<>(items.size());
+        fetchAll(items, call, deadline, outcomes::add);
+        return outcomes;
+    }
+
+    // Outcomes are handed over on the caller's thread in completion order. Items that
+    // fail or miss the deadline get an outcome with the error, they never fail the batch.
+    public <T, R> void fetchAll(Collection<T> items, TmdbCall<T, R> call, Duration deadline,
+            Consumer<Outcome<T, R>> onOutcome) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        CompletionService<Outcome<T, R>> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<Outcome<T, R>>, T> pending = new HashMap<>();
+        for (T item : items) {
+            pending.put(completion.submit(() -> invoke(item, call, deadlineNanos)), item);
+        }
+
+        try {
+            while (!pending.isEmpty()) {
+                Future<Outcome<T, R>> done = completion.poll(deadlineNanos - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    break;
+                }
+                T item = pending.remove(done);
+                try {
+                    onOutcome.accept(done.get());
+                } catch (ExecutionException e) {
+                    onOutcome.accept(new Outcome<>(item, null, e));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!pending.isEmpty()) {
+            log.warn("{} of {} TMDb calls missed the {} deadline", pending.size(), items.size(), deadline);
+            pending.forEach((future, item) -> {
+                future.cancel(true);
+                timeouts.increment();
+                onOutcome.accept(new Outcome<>(item, null, new TimeoutException("TMDb call deadline exceeded")));
+            });
+        }
+    }
+
+    private <T, R> Outcome<T, R> invoke(T item, TmdbCall<T, R> call, long deadlineNanos) {
+        boolean acquired = false;
+        try {
+            acquired = permits.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                return new Outcome<>(item, null, new TimeoutException("No TMDb call permit before deadline"));
+            }
+            R result = callTimer.recordCallable(() -> call.call(item));
+            return new Outcome<>(item, result, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Outcome<>(item, null, e);
+        } catch (Exception e) {
+            failures.increment();
+            return new Outcome<>(item, null, e);
+        } finally {
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
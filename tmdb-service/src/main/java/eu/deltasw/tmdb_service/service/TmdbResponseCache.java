@@ -0,0 +1,110 @@
+package eu.deltasw.tmdb_service.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import info.movito.themoviedbapi.TmdbApi;
+import info.movito.themoviedbapi.model.core.MovieResultsPage;
+import info.movito.themoviedbapi.tools.TmdbException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class TmdbResponseCache {
+    private final TmdbApi tmdb;
+    private final TitleIndex titleIndex;
+    private final AsyncCache<String, MovieResultsPage> searchCache;
+    private final MeterRegistry meterRegistry;
+
+    @FunctionalInterface
+    private interface TmdbCall<V> {
+        V call() throws TmdbException;
+    }
+
+    public TmdbResponseCache(TmdbApi tmdb, TitleIndex titleIndex,
+            @Value("${tmdb.cache.search.max-size}") long searchMaxSize,
+            @Value("${tmdb.cache.search.ttl}") Duration searchTtl,
+            MeterRegistry meterRegistry) {
+        this.tmdb = tmdb;
+        this.titleIndex = titleIndex;
+        this.searchCache = Caffeine.newBuilder()
+                .maximumSize(searchMaxSize)
+                .expireAfterWrite(searchTtl)
+                .buildAsync();
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("tmdb.cache.size", List.of(Tag.of("cache", "search")), searchCache, cache -> cache.synchronous().estimatedSize());
+    }
+
+    // /search and /autocomplete share the entries, the term is normalized so that
+    // differences in case and spacing hit the same entry
+    public MovieResultsPage searchMovies(String term) throws TmdbException {
+        String normalized = normalize(term);
+        return get(searchCache, "search", normalized,
+                () -> indexed(tmdb.getSearch().searchMovie(normalized, false, null, null, null, null, null)));
+    }
+
+    // Every result fetched from TMDb feeds the autocomplete index
+    private MovieResultsPage indexed(MovieResultsPage page) {
+        if (page != null) {
+            titleIndex.addAll(page.getResults());
+        }
+        return page;
+    }
+
+    static String normalize(String term) {
+        return term.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    // Single flight: the request that misses first calls TMDb on its calling thread, concurrent
+    // misses for the same key wait for that call. Failed calls, errors included, are not kept
+    // in the cache, otherwise the waiters would block forever on a future nobody completes.
+    private <V> V get(AsyncCache<String, V> cache, String name, String key, TmdbCall<V> call)
+            throws TmdbException {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = cache.asMap().putIfAbsent(key, created);
+
+        CompletableFuture<V> future;
+        if (existing == null) {
+            counter(name, "miss").increment();
+            meterRegistry.counter("tmdb.cache.upstream", "cache", name).increment();
+            try {
+                created.complete(call.call());
+            } catch (Throwable e) {
+                created.completeExceptionally(e);
+                cache.asMap().remove(key, created);
+            }
+            future = created;
+        } else {
+            counter(name, existing.isDone() ? "hit" : "coalesced").increment();
+            future = existing;
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TmdbException tmdbException) {
+                throw tmdbException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private Counter counter(String name, String result) {
+        return meterRegistry.counter("tmdb.cache.requests", "cache", name, "result", result);
+    }
+}
@@ -0,0 +1,91 @@
+package eu.deltasw.tmdb_service.service;
+
+import java.util.List;
+import java.util.Map;
+
+import eu.deltasw.common.model.ProviderInfo;
+import eu.deltasw.common.model.WatchInfo;
+import eu.deltasw.tmdb_service.model.ProviderIds;
+
+// 64-bit fingerprint of watch providers that does not depend on the order of regions or providers.
+// Every element is hashed on its own and the mixed hashes are summed, so a reordered list gives the same value.
+// The stored fingerprint covers the provider ids, so a row whose ids change is rewritten even when the
+// providers look the same. The fingerprint of one region covers name and logo, it decides on events.
+public final class WatchProvidersFingerprint {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long RENT = 1;
+    private static final long FLATRATE = 2;
+
+    private WatchProvidersFingerprint() {
+    }
+
+    public static long of(Map<String, ProviderIds> regions) {
+        if (regions == null) {
+            return 0;
+        }
+        long fingerprint = 0;
+        for (var entry : regions.entrySet()) {
+            ProviderIds ids = entry.getValue();
+            long region = ids != null ? sum(RENT, ids.getRent()) + sum(FLATRATE, ids.getFlatrate()) : 0;
+            if (region != 0) {
+                fingerprint += mix(hash(hash(FNV_OFFSET, entry.getKey()), region));
+            }
+        }
+        return fingerprint;
+    }
+
+    public static long of(WatchInfo watchInfo) {
+        if (watchInfo == null) {
+            return 0;
+        }
+        return sum(RENT, watchInfo.getRent()) + sum(FLATRATE, watchInfo.getFlatrate());
+    }
+
+    private static long sum(long type, int[] ids) {
+        if (ids == null) {
+            return 0;
+        }
+        long sum = 0;
+        for (int id : ids) {
+            sum += mix(hash(hash(FNV_OFFSET, type), id));
+        }
+        return sum;
+    }
+
+    private static long sum(long type, List<ProviderInfo> providers) {
+        if (providers == null) {
+            return 0;
+        }
+        long sum = 0;
+        for (ProviderInfo provider : providers) {
+            long hash = hash(FNV_OFFSET, type);
+            hash = hash(hash, provider.getProviderName());
+            hash = hash(hash, provider.getLogoPath());
+            sum += mix(hash);
+        }
+        return sum;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return hash(hash, -1L);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // Length as separator, so that ("ab", "c") and ("a", "bc") differ
+        return hash(hash, value.length());
+    }
+
+    private static long hash(long hash, long value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    // SplitMix64 finalizer, spreads the bits before the hashes are summed
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,56 +1,65 @@
 package eu.deltasw.tmdb_service.service;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.TreeMap;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.stereotype.Service;
 
-import eu.deltasw.common.model.ProviderInfo;
-import eu.deltasw.common.model.WatchInfo;
+import eu.deltasw.tmdb_service.model.ProviderIds;
 import info.movito.themoviedbapi.model.core.watchproviders.Provider;
 import info.movito.themoviedbapi.model.core.watchproviders.WatchProviders;
 
 @Service
 public class WatchProvidersMapperService {
 
-    private final ModelMapper modelMapper;
+    private final ProviderDictionary providerDictionary;
 
-    public WatchProvidersMapperService(ModelMapper modelMapper) {
-        this.modelMapper = modelMapper;
+    public WatchProvidersMapperService(ProviderDictionary providerDictionary) {
+        this.providerDictionary = providerDictionary;
     }
 
-    public ProviderInfo convertTo(Provider provider) {
-        return modelMapper.map(provider, ProviderInfo.class);
-    }
-
-    public WatchInfo convertTo(WatchProviders watchProviders) {
+    public ProviderIds convertTo(WatchProviders watchProviders) {
         if (watchProviders == null) {
             return null;
         }
-        WatchInfo dto = new WatchInfo();
-
-        List<ProviderInfo> rentProviders = mapProviderList(watchProviders.getRentProviders());
-        if (rentProviders != null) {
-            dto.setRent(rentProviders);
+        int[] rentProviders = mapProviderList(watchProviders.getRentProviders());
+        int[] flatrateProviders = mapProviderList(watchProviders.getFlatrateProviders());
+        if (flatrateProviders == null && rentProviders == null) {
+            return null;
         }
 
-        List<ProviderInfo> flatrateProviders = mapProviderList(watchProviders.getFlatrateProviders());
-        if (flatrateProviders != null) {
-            dto.setFlatrate(flatrateProviders);
-        }
+        return new ProviderIds(rentProviders, flatrateProviders);
+    }
 
-        if (flatrateProviders == null && rentProviders == null) {
+    public Map<String, ProviderIds> convertTo(Map<String, WatchProviders> regions) {
+        if (regions == null) {
             return null;
         }
-
-        return dto;
+        Map<String, ProviderIds> dto = new TreeMap<>();
+        regions.forEach((region, watchProviders) -> {
+            ProviderIds providerIds = convertTo(watchProviders);
+            if (providerIds != null) {
+                dto.put(region, providerIds);
+            }
+        });
+        return dto.isEmpty() ? null : dto;
     }
 
-    private List<ProviderInfo> mapProviderList(List<Provider> providers) {
-        return providers == null ? null
-                : providers.stream()
-                        .map(this::convertTo)
-                        .collect(Collectors.toList());
+    // Providers are registered in the dictionary, the movie keeps only their ids
+    private int[] mapProviderList(List<Provider> providers) {
+        if (providers == null) {
+            return null;
+        }
+        int[] ids = new int[providers.size()];
+        int count = 0;
+        for (Provider provider : providers) {
+            if (provider.getProviderId() != null) {
+                ids[count++] = providerDictionary.register(provider.getProviderId(), provider.getProviderName(),
+                        provider.getLogoPath());
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
     }
 }
@@ -0,0 +1,2 @@
+-- Lease of the user score refresh, so only one replica fetches scores at a time
+INSERT INTO refresh_checkpoint (job) VALUES ('user-scores') ON CONFLICT (job) DO NOTHING;
@@ -0,0 +1,11 @@
+-- WATCH_INFO_UPDATED events written in the same transaction as the watch providers
+-- they describe and relayed to Kafka by OutboxRelay
+CREATE SEQUENCE IF NOT EXISTS movie_event_outbox_id_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS movie_event_outbox (
+    id BIGINT PRIMARY KEY DEFAULT nextval('movie_event_outbox_id_seq'),
+    event_type VARCHAR(32) NOT NULL,
+    movie_id INTEGER,
+    region VARCHAR(8),
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now()
+);
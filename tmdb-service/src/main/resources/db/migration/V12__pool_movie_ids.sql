@@ -0,0 +1,3 @@
+-- Movie ids are allocated in blocks of 50 so inserts can be batched. The next value
+-- is 50 past the last id handed out, so the first block starts right after it.
+ALTER SEQUENCE movie_id_seq INCREMENT BY 50;
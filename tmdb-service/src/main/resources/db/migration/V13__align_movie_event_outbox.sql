@@ -0,0 +1,6 @@
+-- Same outbox columns as movie-service, both are relayed by the common OutboxRelay
+ALTER TABLE movie_event_outbox ADD COLUMN IF NOT EXISTS user_id VARCHAR(255);
+ALTER TABLE movie_event_outbox ADD COLUMN IF NOT EXISTS rating INTEGER;
+
+-- Ids are drawn one at a time on insert so they follow the order of the changes
+ALTER SEQUENCE movie_event_outbox_id_seq INCREMENT BY 1;
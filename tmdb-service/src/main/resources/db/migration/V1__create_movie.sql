@@ -0,0 +1,6 @@
+-- Baseline schema, the DDL Hibernate generated for the entity with IDENTITY ids
+CREATE TABLE IF NOT EXISTS movie (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    movie_id INTEGER,
+    watch_providers JSONB
+);
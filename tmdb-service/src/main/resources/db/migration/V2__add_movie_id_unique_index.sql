@@ -0,0 +1,7 @@
+-- Keep the oldest row of any duplicated movie before enforcing uniqueness
+DELETE FROM movie a
+    USING movie b
+    WHERE a.movie_id = b.movie_id
+        AND a.id > b.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS movie_movie_id_key ON movie (movie_id);
@@ -0,0 +1,5 @@
+-- TMDb vote average, refreshed in the background instead of on every watch info request
+ALTER TABLE movie ADD COLUMN IF NOT EXISTS user_score DOUBLE PRECISION;
+ALTER TABLE movie ADD COLUMN IF NOT EXISTS user_score_updated_at TIMESTAMP WITH TIME ZONE;
+
+CREATE INDEX IF NOT EXISTS movie_user_score_updated_at ON movie (user_score_updated_at NULLS FIRST);
@@ -0,0 +1,12 @@
+-- Progress of long running refresh jobs, so an interrupted run resumes where it stopped.
+-- last_id is NULL while no run is in progress, the lease keeps replicas from running a job twice.
+CREATE TABLE IF NOT EXISTS refresh_checkpoint (
+    job VARCHAR(64) PRIMARY KEY,
+    last_id BIGINT,
+    processed BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP WITH TIME ZONE,
+    owner VARCHAR(64),
+    lease_until TIMESTAMP WITH TIME ZONE
+);
+
+INSERT INTO refresh_checkpoint (job) VALUES ('watch-providers') ON CONFLICT (job) DO NOTHING;
@@ -0,0 +1,7 @@
+-- Keep the providers of every region from the one TMDb call, the existing rows were fetched for GR
+ALTER TABLE movie ADD COLUMN IF NOT EXISTS regional_watch_providers JSONB;
+
+UPDATE movie SET regional_watch_providers = jsonb_build_object('GR', watch_providers)
+    WHERE watch_providers IS NOT NULL AND jsonb_typeof(watch_providers) = 'object';
+
+ALTER TABLE movie DROP COLUMN IF EXISTS watch_providers;
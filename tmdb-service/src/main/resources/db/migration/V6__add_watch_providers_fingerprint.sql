@@ -0,0 +1,2 @@
+-- Filled by the next watch providers refresh, a missing fingerprint is compared with the stored providers
+ALTER TABLE movie ADD COLUMN IF NOT EXISTS watch_providers_fingerprint BIGINT;
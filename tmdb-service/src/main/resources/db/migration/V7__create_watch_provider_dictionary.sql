@@ -0,0 +1,42 @@
+-- Providers are stored once, movies keep only their ids per region and category
+CREATE TABLE IF NOT EXISTS watch_provider (
+    id INTEGER PRIMARY KEY,
+    name VARCHAR(255),
+    logo_path VARCHAR(255)
+);
+
+ALTER TABLE movie ADD COLUMN IF NOT EXISTS watch_provider_ids JSONB;
+
+-- Existing providers have no TMDb id stored, they get negative ids until the refresh replaces them
+INSERT INTO watch_provider (id, name, logo_path)
+SELECT -ROW_NUMBER() OVER (ORDER BY name, logo_path), name, logo_path FROM (
+    SELECT DISTINCT e.value->>'providerName' AS name, e.value->>'logoPath' AS logo_path
+    FROM movie m
+    CROSS JOIN jsonb_each(m.regional_watch_providers) r
+    CROSS JOIN LATERAL (
+        SELECT r.value->'rent' AS providers UNION ALL SELECT r.value->'flatrate'
+    ) c
+    CROSS JOIN jsonb_array_elements(CASE WHEN jsonb_typeof(c.providers) = 'array' THEN c.providers ELSE '[]' END) e
+    WHERE jsonb_typeof(m.regional_watch_providers) = 'object'
+) legacy;
+
+UPDATE movie m SET watch_provider_ids = ids.regions FROM (
+    SELECT m.id, jsonb_object_agg(r.key, jsonb_build_object(
+        'rent', (SELECT jsonb_agg(p.id ORDER BY e.ordinality)
+            FROM jsonb_array_elements(CASE WHEN jsonb_typeof(r.value->'rent') = 'array'
+                THEN r.value->'rent' ELSE '[]' END) WITH ORDINALITY e
+            JOIN watch_provider p ON p.name IS NOT DISTINCT FROM e.value->>'providerName'
+                AND p.logo_path IS NOT DISTINCT FROM e.value->>'logoPath'),
+        'flatrate', (SELECT jsonb_agg(p.id ORDER BY e.ordinality)
+            FROM jsonb_array_elements(CASE WHEN jsonb_typeof(r.value->'flatrate') = 'array'
+                THEN r.value->'flatrate' ELSE '[]' END) WITH ORDINALITY e
+            JOIN watch_provider p ON p.name IS NOT DISTINCT FROM e.value->>'providerName'
+                AND p.logo_path IS NOT DISTINCT FROM e.value->>'logoPath'))) AS regions
+    FROM movie m
+    CROSS JOIN jsonb_each(m.regional_watch_providers) r
+    WHERE jsonb_typeof(m.regional_watch_providers) = 'object'
+    GROUP BY m.id
+) ids
+WHERE m.id = ids.id;
+
+ALTER TABLE movie DROP COLUMN IF EXISTS regional_watch_providers;
@@ -0,0 +1,2 @@
+-- When the watch providers were last fetched, repeated ADD events within the freshness window skip TMDb
+ALTER TABLE movie ADD COLUMN IF NOT EXISTS watch_providers_updated_at TIMESTAMP WITH TIME ZONE;
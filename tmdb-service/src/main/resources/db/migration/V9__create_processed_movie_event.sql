@@ -0,0 +1,7 @@
+-- Ids of relayed movie events already handled, the outbox relay may send an event twice
+CREATE TABLE IF NOT EXISTS processed_movie_event (
+    event_id VARCHAR(64) PRIMARY KEY,
+    processed_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS processed_movie_event_processed_at ON processed_movie_event (processed_at);
@@ -0,0 +1,206 @@
+package eu.deltasw.tmdb_service.component;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import eu.deltasw.common.outbox.MovieEventOutbox;
+import eu.deltasw.tmdb_service.model.Movie;
+import eu.deltasw.tmdb_service.model.ProviderIds;
+import eu.deltasw.tmdb_service.model.RefreshCheckpoint;
+import eu.deltasw.tmdb_service.model.WatchProviderState;
+import eu.deltasw.tmdb_service.repository.MovieRepository;
+import eu.deltasw.tmdb_service.repository.RefreshCheckpointRepository;
+import eu.deltasw.tmdb_service.repository.WatchProviderRepository;
+import eu.deltasw.tmdb_service.service.ProviderDictionary;
+import eu.deltasw.tmdb_service.service.TmdbFanOut;
+import eu.deltasw.tmdb_service.service.TmdbFanOut.Outcome;
+import eu.deltasw.tmdb_service.service.WatchProvidersFingerprint;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class WatchProviderInfoTest {
+    private MovieRepository repository;
+    private RefreshCheckpointRepository checkpoints;
+    private TmdbFanOut fanOut;
+    private MovieEventOutbox outbox;
+    private WatchProviderRepository watchProviders;
+    private ProviderDictionary providerDictionary;
+    private TaskScheduler taskScheduler;
+    private WatchProviderInfo watchProviderInfo;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(MovieRepository.class);
+        checkpoints = mock(RefreshCheckpointRepository.class);
+        fanOut = mock(TmdbFanOut.class);
+        outbox = mock(MovieEventOutbox.class);
+        watchProviders = mock(WatchProviderRepository.class);
+        providerDictionary = new ProviderDictionary(watchProviders);
+        taskScheduler = mock(TaskScheduler.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        watchProviderInfo = new WatchProviderInfo(repository, checkpoints, null, fanOut, outbox, null,
+                providerDictionary, transactionTemplate, taskScheduler, 100, 40, Duration.ofSeconds(10),
+                Duration.ofMinutes(5),
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void resumeWithUnexpiredLeaseIsRetriedWhenTheLeaseExpires() {
+        Instant leaseUntil = Instant.now().plus(3, ChronoUnit.MINUTES);
+        when(checkpoints.claim(anyString(), anyString(), any(), any(), anyBoolean())).thenReturn(0);
+        when(checkpoints.findById("watch-providers")).thenReturn(Optional.of(checkpoint(42L, leaseUntil)));
+
+        watchProviderInfo.resume();
+
+        verify(taskScheduler).schedule(any(Runnable.class), eq(leaseUntil.plusSeconds(1)));
+    }
+
+    @Test
+    void resumeWithoutInterruptedRunIsNotRetried() {
+        when(checkpoints.claim(anyString(), anyString(), any(), any(), anyBoolean())).thenReturn(0);
+        when(checkpoints.findById("watch-providers")).thenReturn(Optional.of(checkpoint(null, null)));
+
+        watchProviderInfo.resume();
+
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void migratedProviderIdsAreReplacedWithoutEvents() {
+        // V7 gave the providers stored before the dictionary negative ids, TMDb knows Netflix as 8
+        providerDictionary.register(-1, "Netflix", "/netflix.png");
+        providerDictionary.register(8, "Netflix", "/netflix.png");
+        Movie movie = Movie.builder()
+                .id(1L)
+                .movieId(603)
+                .watchProviderIds(Map.of("GR", new ProviderIds(null, new int[] { -1 })))
+                .watchProvidersFingerprint(12345L)
+                .build();
+        Map<String, ProviderIds> fetched = Map.of("GR", new ProviderIds(null, new int[] { 8 }));
+
+        WatchProviderState state = mock(WatchProviderState.class);
+        when(state.getId()).thenReturn(1L);
+        when(state.getMovieId()).thenReturn(603);
+        when(state.getWatchProvidersFingerprint()).thenReturn(12345L);
+        when(checkpoints.claim(anyString(), anyString(), any(), any(), anyBoolean())).thenReturn(1);
+        when(checkpoints.findById("watch-providers")).thenReturn(Optional.of(checkpoint(0L, null)));
+        when(checkpoints.advance(anyString(), anyString(), anyLong(), anyLong(), any())).thenReturn(1);
+        when(repository.findPageAfter(eq(0L), any())).thenReturn(List.of(state));
+        when(repository.findPageAfter(eq(1L), any())).thenReturn(List.of());
+        when(repository.findAllById(any())).thenReturn(List.of(movie));
+        when(fanOut.<WatchProviderState, Map<String, ProviderIds>>fetchAll(any(), any(), any(Duration.class)))
+                .thenReturn(List.of(new Outcome<>(state, fetched, null)));
+
+        watchProviderInfo.updateWatchProvidersInfo();
+
+        assertArrayEquals(new int[] { 8 }, movie.getWatchProviderIds().get("GR").getFlatrate());
+        assertEquals(WatchProvidersFingerprint.of(fetched), movie.getWatchProvidersFingerprint());
+        verify(outbox).enqueueAll(List.of());
+        verify(repository).stampWatchProvidersFetched(eq(List.of(1L)), any());
+        verify(watchProviders).deleteUnreferencedLegacy();
+    }
+
+    @Test
+    void unchangedMoviesAreStampedAsFetched() {
+        Map<String, ProviderIds> fetched = Map.of("GR", new ProviderIds(null, new int[] { 8 }));
+        WatchProviderState first = state(1L, fetched);
+        WatchProviderState second = state(2L, fetched);
+        when(checkpoints.claim(anyString(), anyString(), any(), any(), anyBoolean())).thenReturn(1);
+        when(checkpoints.findById("watch-providers")).thenReturn(Optional.of(checkpoint(0L, null)));
+        when(checkpoints.advance(anyString(), anyString(), anyLong(), anyLong(), any())).thenReturn(1);
+        when(repository.findPageAfter(eq(0L), any())).thenReturn(List.of(first, second));
+        when(repository.findPageAfter(eq(2L), any())).thenReturn(List.of());
+        when(fanOut.<WatchProviderState, Map<String, ProviderIds>>fetchAll(any(), any(), any(Duration.class)))
+                .thenReturn(List.of(new Outcome<>(first, fetched, null),
+                        new Outcome<>(second, null, new IllegalStateException("TMDb unavailable"))));
+
+        watchProviderInfo.updateWatchProvidersInfo();
+
+        verify(repository).stampWatchProvidersFetched(eq(List.of(1L)), any());
+        verify(repository, never()).findAllById(any());
+    }
+
+    @Test
+    void moviesThatMissTheDeadlineAreFetchedAgain() {
+        Map<String, ProviderIds> fetched = Map.of();
+        WatchProviderState first = state(1L, fetched);
+        WatchProviderState second = state(2L, fetched);
+        WatchProviderState third = state(3L, fetched);
+        when(checkpoints.claim(anyString(), anyString(), any(), any(), anyBoolean())).thenReturn(1);
+        when(checkpoints.findById("watch-providers")).thenReturn(Optional.of(checkpoint(0L, null)));
+        when(checkpoints.advance(anyString(), anyString(), anyLong(), anyLong(), any())).thenReturn(1);
+        when(repository.findPageAfter(eq(0L), any())).thenReturn(List.of(first, second, third));
+        when(repository.findPageAfter(eq(1L), any())).thenReturn(List.of(second, third));
+        when(repository.findPageAfter(eq(3L), any())).thenReturn(List.of());
+        when(fanOut.<WatchProviderState, Map<String, ProviderIds>>fetchAll(any(), any(), any(Duration.class)))
+                .thenReturn(List.of(new Outcome<>(first, fetched, null), new Outcome<>(third, fetched, null),
+                        new Outcome<>(second, null, new TimeoutException("TMDb call deadline exceeded"))))
+                .thenReturn(List.of(new Outcome<>(second, fetched, null), new Outcome<>(third, fetched, null)));
+
+        watchProviderInfo.updateWatchProvidersInfo();
+
+        verify(checkpoints).advance(eq("watch-providers"), anyString(), eq(1L), eq(1L), any());
+        verify(checkpoints).advance(eq("watch-providers"), anyString(), eq(3L), eq(3L), any());
+        verify(checkpoints).complete(eq("watch-providers"), anyString());
+    }
+
+    @Test
+    void runStopsWhenNoMovieOfThePageMakesTheDeadline() {
+        WatchProviderState first = state(1L, Map.of());
+        when(checkpoints.claim(anyString(), anyString(), any(), any(), anyBoolean())).thenReturn(1);
+        when(checkpoints.findById("watch-providers")).thenReturn(Optional.of(checkpoint(0L, null)));
+        when(repository.findPageAfter(eq(0L), any())).thenReturn(List.of(first));
+        when(fanOut.<WatchProviderState, Map<String, ProviderIds>>fetchAll(any(), any(), any(Duration.class)))
+                .thenReturn(List.of(new Outcome<>(first, null, new TimeoutException("TMDb call deadline exceeded"))));
+
+        watchProviderInfo.updateWatchProvidersInfo();
+
+        verify(checkpoints, never()).advance(anyString(), anyString(), anyLong(), anyLong(), any());
+        verify(checkpoints, never()).complete(anyString(), anyString());
+        verify(checkpoints).release(eq("watch-providers"), anyString());
+    }
+
+    private static WatchProviderState state(Long id, Map<String, ProviderIds> providers) {
+        WatchProviderState state = mock(WatchProviderState.class);
+        when(state.getId()).thenReturn(id);
+        when(state.getMovieId()).thenReturn(id.intValue() + 600);
+        when(state.getWatchProvidersFingerprint()).thenReturn(WatchProvidersFingerprint.of(providers));
+        return state;
+    }
+
+    private static RefreshCheckpoint checkpoint(Long lastId, Instant leaseUntil) {
+        RefreshCheckpoint checkpoint = new RefreshCheckpoint();
+        checkpoint.setJob("watch-providers");
+        checkpoint.setLastId(lastId);
+        checkpoint.setLeaseUntil(leaseUntil);
+        return checkpoint;
+    }
+}
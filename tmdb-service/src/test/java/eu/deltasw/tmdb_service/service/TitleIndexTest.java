@@ -0,0 +1,106 @@
+package eu.deltasw.tmdb_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import eu.deltasw.tmdb_service.service.TitleIndex.Suggestion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TitleIndexTest {
+    private TitleIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TitleIndex(10, 1, 12, 3, DataSize.ofMegabytes(1), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void renamedTitleDropsItsOldPrefixes() {
+        index.add(new Suggestion(1, "The Matrix", "1999-03-30", null, 50));
+        long bytes = index.estimatedBytes();
+
+        index.add(new Suggestion(1, "Matrix Reloaded", "2003-05-07", null, 40));
+
+        assertTrue(index.suggest("the").isEmpty());
+        assertTrue(index.suggest("the matrix").isEmpty());
+        assertEquals(List.of(1), ids(index.suggest("matrix")));
+        assertEquals(List.of(1), ids(index.suggest("reloaded")));
+        assertTrue(index.estimatedBytes() <= bytes + TitleIndex.NODE_BYTES * "reloaded".length());
+    }
+
+    @Test
+    void renameKeepsPrefixesSharedWithOtherTitles() {
+        index.add(new Suggestion(1, "The Matrix", "1999-03-30", null, 50));
+        index.add(new Suggestion(2, "The Thing", "1982-06-25", null, 30));
+
+        index.add(new Suggestion(1, "Matrix", "1999-03-30", null, 50));
+
+        assertEquals(List.of(2), ids(index.suggest("the")));
+        assertEquals(List.of(1), ids(index.suggest("mat")));
+    }
+
+    @Test
+    void titlesBeyondTheMemoryBudgetAreSkipped() {
+        long budget = TitleIndex.TITLE_BYTES + 6 * TitleIndex.NODE_BYTES;
+        index = new TitleIndex(10, 1, 12, 3, DataSize.ofBytes(budget), new SimpleMeterRegistry());
+        index.add(new Suggestion(1, "Alien", "1979-05-25", null, 20));
+        index.add(new Suggestion(2, "Aliens", "1986-07-18", null, 25));
+
+        assertEquals(List.of(1), ids(index.suggest("alien")));
+        assertTrue(index.estimatedBytes() <= budget);
+    }
+
+    @Test
+    void indexStaysWithinTheMemoryBudget() {
+        long budget = 64 * 1024;
+        index = new TitleIndex(10, 1, 12, 3, DataSize.ofBytes(budget), new SimpleMeterRegistry());
+
+        for (int id = 1; id <= 5_000; id++) {
+            index.add(new Suggestion(id, "Movie " + Integer.toString(id * 7919, 36) + " part " + id, null, null, id));
+            assertTrue(index.estimatedBytes() <= budget);
+        }
+
+        assertTrue(index.estimatedBytes() > budget / 2);
+        assertTrue(index.suggest("movie").size() > 0);
+        assertTrue(index.suggest("part 5000").isEmpty());
+    }
+
+    @Test
+    void knownTitlesAreUpdatedWhenTheBudgetIsFull() {
+        index = new TitleIndex(10, 1, 12, 3, DataSize.ofBytes(TitleIndex.TITLE_BYTES + 5 * TitleIndex.NODE_BYTES),
+                new SimpleMeterRegistry());
+        index.add(new Suggestion(1, "Alien", "1979-05-25", null, 20));
+
+        index.add(new Suggestion(1, "Alien", "1979-05-25", "/alien.jpg", 90));
+
+        assertEquals("/alien.jpg", index.suggest("alien").getFirst().posterPath());
+    }
+
+    @Test
+    void renamesGiveBackTheNodesOfTheOldTitles() {
+        for (int id = 1; id <= 100; id++) {
+            index.add(new Suggestion(id, "Title " + id, null, null, id));
+        }
+        long bytes = index.estimatedBytes();
+
+        for (int id = 1; id <= 100; id++) {
+            index.add(new Suggestion(id, "Renamed " + id, null, null, id));
+        }
+        for (int id = 1; id <= 100; id++) {
+            index.add(new Suggestion(id, "Title " + id, null, null, id));
+        }
+
+        assertEquals(bytes, index.estimatedBytes());
+        assertTrue(index.suggest("renamed").isEmpty());
+    }
+
+    private static List<Integer> ids(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::movieId).toList();
+    }
+}
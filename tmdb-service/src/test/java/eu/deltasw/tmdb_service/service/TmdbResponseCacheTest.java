@@ -0,0 +1,48 @@
+package eu.deltasw.tmdb_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import info.movito.themoviedbapi.TmdbApi;
+import info.movito.themoviedbapi.TmdbSearch;
+import info.movito.themoviedbapi.model.core.MovieResultsPage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TmdbResponseCacheTest {
+    private TmdbSearch search;
+    private TmdbResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        TmdbApi tmdb = mock(TmdbApi.class);
+        search = mock(TmdbSearch.class);
+        when(tmdb.getSearch()).thenReturn(search);
+        TitleIndex titleIndex = new TitleIndex(10, 1, 12, 3, DataSize.ofMegabytes(1), new SimpleMeterRegistry());
+        cache = new TmdbResponseCache(tmdb, titleIndex, 100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void errorDuringTheCallIsNotCached() throws Exception {
+        MovieResultsPage page = new MovieResultsPage();
+        when(search.searchMovie(eq("matrix"), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new LinkageError("boom"))
+                .thenReturn(page);
+
+        assertThrows(LinkageError.class, () -> cache.searchMovies("Matrix"));
+
+        assertSame(page, cache.searchMovies("Matrix"));
+        verify(search, times(2)).searchMovie(eq("matrix"), any(), any(), any(), any(), any(), any());
+    }
+}
@@ -0,0 +1,40 @@
+package eu.deltasw.tmdb_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import eu.deltasw.tmdb_service.model.ProviderIds;
+
+class WatchProvidersFingerprintTest {
+
+    @Test
+    void orderOfRegionsAndProvidersDoesNotMatter() {
+        assertEquals(
+                WatchProvidersFingerprint.of(Map.of(
+                        "GR", new ProviderIds(new int[] { 2, 3 }, new int[] { 8 }),
+                        "US", new ProviderIds(null, new int[] { 8, 337 }))),
+                WatchProvidersFingerprint.of(Map.of(
+                        "US", new ProviderIds(null, new int[] { 337, 8 }),
+                        "GR", new ProviderIds(new int[] { 3, 2 }, new int[] { 8 }))));
+    }
+
+    @Test
+    void providerIdsAreCovered() {
+        assertNotEquals(
+                WatchProvidersFingerprint.of(Map.of("GR", new ProviderIds(null, new int[] { -1 }))),
+                WatchProvidersFingerprint.of(Map.of("GR", new ProviderIds(null, new int[] { 8 }))));
+    }
+
+    @Test
+    void categoryAndRegionAreCovered() {
+        long flatrate = WatchProvidersFingerprint.of(Map.of("GR", new ProviderIds(null, new int[] { 8 })));
+        assertNotEquals(flatrate,
+                WatchProvidersFingerprint.of(Map.of("GR", new ProviderIds(new int[] { 8 }, null))));
+        assertNotEquals(flatrate,
+                WatchProvidersFingerprint.of(Map.of("US", new ProviderIds(null, new int[] { 8 }))));
+    }
+}
@@ -0,0 +1,138 @@
+package eu.deltasw.tmdb_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import eu.deltasw.common.model.ProviderInfo;
+import eu.deltasw.common.model.WatchInfo;
+import eu.deltasw.tmdb_service.repository.WatchProviderRepository;
+import info.movito.themoviedbapi.model.core.watchproviders.Provider;
+import info.movito.themoviedbapi.model.core.watchproviders.WatchProviders;
+
+// The hand-written mapper, resolved through the dictionary, must give what ModelMapper gave
+class WatchProvidersMapperServiceTest {
+    private ModelMapper modelMapper;
+    private ProviderDictionary providerDictionary;
+    private WatchProvidersMapperService mapper;
+
+    @BeforeEach
+    void setUp() {
+        // Same configuration as the ModelMapperConfig it replaced
+        modelMapper = new ModelMapper();
+        modelMapper.getConfiguration()
+                .setFieldMatchingEnabled(true)
+                .setFieldAccessLevel(org.modelmapper.config.Configuration.AccessLevel.PRIVATE);
+        providerDictionary = new ProviderDictionary(mock(WatchProviderRepository.class));
+        mapper = new WatchProvidersMapperService(providerDictionary);
+    }
+
+    @Test
+    void nullAndEmptyRegions() {
+        assertNull(mapper.convertTo((Map<String, WatchProviders>) null));
+        assertNull(modelMapperMapping(null));
+        assertMappedAlike(Map.of());
+    }
+
+    @Test
+    void regionsWithoutProvidersAreLeftOut() {
+        Map<String, WatchProviders> regions = new HashMap<>();
+        regions.put("GR", watchProviders(null, null, null));
+        regions.put("US", watchProviders(null, null, List.of(provider(2, "Apple TV", "/apple.jpg"))));
+        regions.put("DE", null);
+
+        assertMappedAlike(regions);
+    }
+
+    @Test
+    void missingCategories() {
+        Map<String, WatchProviders> regions = Map.of(
+                "GR", watchProviders(List.of(provider(8, "Netflix", "/netflix.jpg")), null, null),
+                "US", watchProviders(null, List.of(provider(2, "Apple TV", "/apple.jpg")), null),
+                "FR", watchProviders(List.of(), null, List.of(provider(2, "Apple TV", "/apple.jpg"))));
+
+        assertMappedAlike(regions);
+    }
+
+    @Test
+    void duplicateProvidersAreKept() {
+        Provider netflix = provider(8, "Netflix", "/netflix.jpg");
+        Map<String, WatchProviders> regions = Map.of(
+                "GR", watchProviders(List.of(netflix, provider(337, "Disney Plus", "/disney.jpg"), netflix),
+                        List.of(netflix), null),
+                "US", watchProviders(List.of(netflix), List.of(netflix, netflix), null));
+
+        assertMappedAlike(regions);
+    }
+
+    @Test
+    void providersWithoutNameOrLogo() {
+        Map<String, WatchProviders> regions = Map.of(
+                "GR", watchProviders(List.of(provider(8, null, "/netflix.jpg"), provider(9, "Prime", null)), null,
+                        null));
+
+        assertMappedAlike(regions);
+    }
+
+    private void assertMappedAlike(Map<String, WatchProviders> regions) {
+        assertEquals(modelMapperMapping(regions), providerDictionary.resolve(mapper.convertTo(regions)));
+    }
+
+    // The mapping before the dictionary, as it was written with ModelMapper
+    private Map<String, WatchInfo> modelMapperMapping(Map<String, WatchProviders> regions) {
+        if (regions == null) {
+            return null;
+        }
+        Map<String, WatchInfo> dto = new TreeMap<>();
+        regions.forEach((region, watchProviders) -> {
+            if (watchProviders == null) {
+                return;
+            }
+            List<ProviderInfo> rent = modelMapperList(watchProviders.getRentProviders());
+            List<ProviderInfo> flatrate = modelMapperList(watchProviders.getFlatrateProviders());
+            if (rent == null && flatrate == null) {
+                return;
+            }
+            WatchInfo watchInfo = new WatchInfo();
+            watchInfo.setRent(rent);
+            watchInfo.setFlatrate(flatrate);
+            dto.put(region, watchInfo);
+        });
+        return dto.isEmpty() ? null : dto;
+    }
+
+    private List<ProviderInfo> modelMapperList(List<Provider> providers) {
+        return providers == null ? null
+                : providers.stream()
+                        .map(provider -> modelMapper.map(provider, ProviderInfo.class))
+                        .collect(Collectors.toList());
+    }
+
+    private static WatchProviders watchProviders(List<Provider> flatrate, List<Provider> rent, List<Provider> buy) {
+        WatchProviders watchProviders = mock(WatchProviders.class);
+        when(watchProviders.getFlatrateProviders()).thenReturn(flatrate != null ? new ArrayList<>(flatrate) : null);
+        when(watchProviders.getRentProviders()).thenReturn(rent != null ? new ArrayList<>(rent) : null);
+        when(watchProviders.getBuyProviders()).thenReturn(buy);
+        return watchProviders;
+    }
+
+    private static Provider provider(int id, String name, String logoPath) {
+        Provider provider = mock(Provider.class);
+        when(provider.getProviderId()).thenReturn(id);
+        when(provider.getProviderName()).thenReturn(name);
+        when(provider.getLogoPath()).thenReturn(logoPath);
+        return provider;
+    }
+}
@@ -0,0 +1,11 @@
+package eu.deltasw.tmdb_simulator;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class TmdbSimulatorApplication {
+    public static void main(String[] args) {
+        SpringApplication.run(TmdbSimulatorApplication.class, args);
+    }
+}
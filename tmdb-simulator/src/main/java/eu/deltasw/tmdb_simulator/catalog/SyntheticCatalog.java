@@ -0,0 +1,142 @@
+package eu.deltasw.tmdb_simulator.catalog;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+// A catalog derived only from the seed and the movie id, so every run serves the same data.
+// Watch providers of a small share of the movies change every churn period, so change
+// detection has something to find.
+@Component
+@Slf4j
+public class SyntheticCatalog {
+    private static final String[] ADJECTIVES = { "Silent", "Crimson", "Last", "Hidden", "Broken", "Golden",
+            "Endless", "Dark", "Forgotten", "Electric", "Wild", "Frozen", "Lost", "Burning", "Secret", "Eternal" };
+    private static final String[] NOUNS = { "Horizon", "Empire", "River", "Signal", "Garden", "Kingdom", "Voyage",
+            "Shadow", "Protocol", "Harbor", "Summer", "Machine", "Island", "Promise", "Frontier", "Symphony" };
+    private static final String[] SUFFIXES = { "", "", "", " II", " III", ": Origins", ": Reckoning", " Returns" };
+    private static final Provider[] PROVIDERS = {
+            new Provider("/pbpMk2JmcoNnQwx5JGpXngfoWtp.jpg", 8, "Netflix", 0),
+            new Provider("/97yvRBw1GzX7fXprcF80er19ot.jpg", 337, "Disney Plus", 1),
+            new Provider("/pvske1MyAoymrs5bguRfVqYiM9a.jpg", 119, "Amazon Prime Video", 2),
+            new Provider("/6uhKBfmtzFqOcLousHwZuzcrScK.jpg", 2, "Apple TV", 3),
+            new Provider("/8z7rC8uIDaTM91X0ZfkRf04ydj2.jpg", 3, "Google Play Movies", 4),
+            new Provider("/Ajqyt5aNxNGjmF9uOfxArGrdf3X.jpg", 1899, "Max", 5),
+            new Provider("/2E03IAZsX4ZaUqM7tXlctEPMGWS.jpg", 350, "Apple TV Plus", 6),
+            new Provider("/xbhHHa1YgtpwhC8lb1NQ3ACVcLd.jpg", 531, "Paramount Plus", 7) };
+    private static final String[] REGIONS = { "GR", "US", "GB", "DE" };
+
+    private final long seed;
+    private final double providerChurn;
+    private final Duration churnPeriod;
+    private final CatalogMovie[] movies;
+    private final List<CatalogMovie> byPopularity;
+
+    public record CatalogMovie(int id, String title, String originalTitle, String overview, String releaseDate,
+            String posterPath, String backdropPath, double popularity, double voteAverage, int voteCount,
+            boolean adult, boolean video, String originalLanguage, List<Integer> genreIds) {
+    }
+
+    public record Provider(String logoPath, int providerId, String providerName, int displayPriority) {
+    }
+
+    public record RegionProviders(String link, List<Provider> flatrate, List<Provider> rent, List<Provider> buy) {
+    }
+
+    public SyntheticCatalog(@Value("${simulator.catalog.size}") int size,
+            @Value("${simulator.catalog.seed}") long seed,
+            @Value("${simulator.catalog.provider-churn}") double providerChurn,
+            @Value("${simulator.catalog.churn-period}") Duration churnPeriod) {
+        this.seed = seed;
+        this.providerChurn = providerChurn;
+        this.churnPeriod = churnPeriod;
+        this.movies = new CatalogMovie[size];
+        for (int i = 0; i < size; i++) {
+            movies[i] = generate(i + 1);
+        }
+        this.byPopularity = Arrays.stream(movies)
+                .sorted(Comparator.comparingDouble(CatalogMovie::popularity).reversed())
+                .toList();
+        log.info("Generated synthetic catalog of {} movies with seed {}", size, seed);
+    }
+
+    public Optional<CatalogMovie> find(int id) {
+        return id >= 1 && id <= movies.length ? Optional.of(movies[id - 1]) : Optional.empty();
+    }
+
+    public List<CatalogMovie> popular() {
+        return byPopularity;
+    }
+
+    // Titles containing a word starting with the query, most popular first
+    public List<CatalogMovie> search(String query) {
+        String term = query.strip().toLowerCase(Locale.ROOT);
+        if (term.isEmpty()) {
+            return List.of();
+        }
+        return byPopularity.stream()
+                .filter(movie -> {
+                    String title = movie.title().toLowerCase(Locale.ROOT);
+                    return title.startsWith(term) || title.contains(" " + term);
+                })
+                .toList();
+    }
+
+    public Map<String, RegionProviders> watchProviders(int id) {
+        long bucket = System.currentTimeMillis() / churnPeriod.toMillis();
+        boolean churning = random(id, bucket, 7).nextDouble() < providerChurn;
+        Map<String, RegionProviders> results = new LinkedHashMap<>();
+        for (int r = 0; r < REGIONS.length; r++) {
+            SplittableRandom random = random(id, churning ? bucket : 0, 11 + r);
+            // Roughly a fifth of the movies are not available in a region
+            if (random.nextDouble() < 0.2) {
+                continue;
+            }
+            results.put(REGIONS[r], new RegionProviders(
+                    "https://www.themoviedb.org/movie/" + id + "/watch?locale=" + REGIONS[r],
+                    pick(random, 0, 3), pick(random, 3, 5), pick(random, 3, 5)));
+        }
+        return results;
+    }
+
+    private CatalogMovie generate(int id) {
+        SplittableRandom random = random(id, 0, 1);
+        String title = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + NOUNS[random.nextInt(NOUNS.length)]
+                + SUFFIXES[random.nextInt(SUFFIXES.length)];
+        LocalDate releaseDate = LocalDate.of(1950, 1, 1).plusDays(random.nextInt(365 * 75));
+        // Long tail of popularity like the real catalog
+        double popularity = Math.round(1000.0 * Math.pow(random.nextDouble(), 6) * 1000) / 1000.0;
+        double voteAverage = Math.round((2 + random.nextDouble() * 7.5) * 1000) / 1000.0;
+        List<Integer> genreIds = List.of(12 + random.nextInt(10), 28 + random.nextInt(10));
+        return new CatalogMovie(id, title, title, "Synthetic movie " + id + ".", releaseDate.toString(),
+                "/poster" + id + ".jpg", "/backdrop" + id + ".jpg", popularity, voteAverage, random.nextInt(20000),
+                false, false, "en", genreIds);
+    }
+
+    private List<Provider> pick(SplittableRandom random, int from, int count) {
+        List<Provider> picked = new ArrayList<>();
+        for (int i = from; i < PROVIDERS.length && picked.size() < count; i++) {
+            if (random.nextDouble() < 0.4) {
+                picked.add(PROVIDERS[i]);
+            }
+        }
+        return picked;
+    }
+
+    private SplittableRandom random(int id, long bucket, int stream) {
+        return new SplittableRandom(seed * 31 + id * 1_000_003L + bucket * 7_919L + stream);
+    }
+}
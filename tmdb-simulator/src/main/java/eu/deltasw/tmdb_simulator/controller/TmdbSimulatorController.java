@@ -0,0 +1,74 @@
+package eu.deltasw.tmdb_simulator.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import eu.deltasw.tmdb_simulator.catalog.SyntheticCatalog;
+import eu.deltasw.tmdb_simulator.catalog.SyntheticCatalog.CatalogMovie;
+import eu.deltasw.tmdb_simulator.web.TmdbError;
+
+// The subset of the TMDb v3 API used by tmdb-service, with the same paths and JSON shapes
+@RestController
+@RequestMapping("/3")
+public class TmdbSimulatorController {
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_PAGES = 500;
+
+    private final SyntheticCatalog catalog;
+
+    public TmdbSimulatorController(SyntheticCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public record ResultsPage(int page, List<CatalogMovie> results, int totalPages, int totalResults) {
+    }
+
+    public record WatchProviders(int id, Map<String, SyntheticCatalog.RegionProviders> results) {
+    }
+
+    @GetMapping("/discover/movie")
+    public ResponseEntity<?> discover(@RequestParam(value = "page", defaultValue = "1") int page) {
+        return ResponseEntity.ok(page(catalog.popular(), page));
+    }
+
+    @GetMapping("/search/movie")
+    public ResponseEntity<?> search(@RequestParam(value = "query", defaultValue = "") String query,
+            @RequestParam(value = "page", defaultValue = "1") int page) {
+        return ResponseEntity.ok(page(catalog.search(query), page));
+    }
+
+    @GetMapping("/movie/{id}")
+    public ResponseEntity<?> details(@PathVariable("id") int id) {
+        return catalog.find(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(TmdbSimulatorController::notFound);
+    }
+
+    @GetMapping("/movie/{id}/watch/providers")
+    public ResponseEntity<?> watchProviders(@PathVariable("id") int id) {
+        if (catalog.find(id).isEmpty()) {
+            return notFound();
+        }
+        return ResponseEntity.ok(new WatchProviders(id, catalog.watchProviders(id)));
+    }
+
+    private static ResultsPage page(List<CatalogMovie> movies, int page) {
+        int totalPages = Math.min(MAX_PAGES, (movies.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        int from = Math.min(movies.size(), (Math.max(page, 1) - 1) * PAGE_SIZE);
+        int to = Math.min(movies.size(), from + PAGE_SIZE);
+        return new ResultsPage(page, movies.subList(from, to), totalPages, movies.size());
+    }
+
+    private static ResponseEntity<?> notFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(new TmdbError(false, 34, "The resource you requested could not be found."));
+    }
+}
@@ -0,0 +1,133 @@
+package eu.deltasw.tmdb_simulator.web;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+// Adds the behaviour of the real API in front of the catalog: log-normal latency given
+// by its median and p99, random server errors and a token bucket returning 429. Latency
+// and errors are drawn from the catalog seed and the request number, so a run replays.
+@Component
+@Slf4j
+public class FaultInjectionFilter extends OncePerRequestFilter {
+    // z-score of the 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.326;
+
+    private final ObjectMapper objectMapper;
+    private final double mu;
+    private final double sigma;
+    private final double errorRate;
+    private final double permitsPerSecond;
+    private final double burst;
+    private final long seed;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Counter ok;
+    private final Counter errors;
+    private final Counter throttled;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public FaultInjectionFilter(ObjectMapper objectMapper,
+            @Value("${simulator.latency.median}") Duration median,
+            @Value("${simulator.latency.p99}") Duration p99,
+            @Value("${simulator.errors.rate}") double errorRate,
+            @Value("${simulator.rate-limit.requests-per-second}") double permitsPerSecond,
+            @Value("${simulator.rate-limit.burst}") double burst,
+            @Value("${simulator.catalog.seed}") long seed,
+            MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.mu = Math.log(Math.max(median.toNanos(), 1));
+        this.sigma = p99.compareTo(median) > 0 ? Math.log((double) p99.toNanos() / median.toNanos()) / Z_99 : 0;
+        this.errorRate = errorRate;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.seed = seed;
+        this.ok = meterRegistry.counter("simulator.requests", "outcome", "ok");
+        this.errors = meterRegistry.counter("simulator.requests", "outcome", "error");
+        this.throttled = meterRegistry.counter("simulator.requests", "outcome", "throttled");
+        log.info("Simulating TMDb with median latency {}, p99 {}, error rate {}, {} requests/s, seed {}", median,
+                p99, errorRate, permitsPerSecond > 0 ? permitsPerSecond : "unlimited", seed);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/3/");
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+        SplittableRandom random = new SplittableRandom(seed * 31 + sequence.incrementAndGet());
+        if (!tryAcquire()) {
+            throttled.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            writeError(response, HttpStatus.TOO_MANY_REQUESTS,
+                    new TmdbError(false, 25, "Your request count is over the allowed limit."));
+            return;
+        }
+
+        sleep(sampleLatency(random));
+
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            errors.increment();
+            writeError(response, HttpStatus.INTERNAL_SERVER_ERROR, new TmdbError(false, 11, "Internal error."));
+            return;
+        }
+
+        ok.increment();
+        filterChain.doFilter(request, response);
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (permitsPerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * permitsPerSecond);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    private long sampleLatency(SplittableRandom random) {
+        return (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, TmdbError error) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), error);
+    }
+}
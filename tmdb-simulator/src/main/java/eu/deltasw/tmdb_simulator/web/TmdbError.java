@@ -0,0 +1,4 @@
+package eu.deltasw.tmdb_simulator.web;
+
+public record TmdbError(boolean success, int statusCode, String statusMessage) {
+}